@@ -0,0 +1,305 @@
+/*
+ * Copyright 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.i18n.pseudolocalization.benchmarks;
+
+import com.google.common.base.Joiner;
+import com.google.i18n.pseudolocalization.PseudolocalizationPipeline;
+import com.google.i18n.pseudolocalization.format.FormatRegistry;
+import com.google.i18n.pseudolocalization.format.MessageCatalog;
+import com.google.i18n.pseudolocalization.format.ReadableMessageCatalog;
+import com.google.i18n.pseudolocalization.format.WritableMessageCatalog;
+import com.google.i18n.pseudolocalization.message.Message;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Measures the full read, localize and write path of the command-line tool on
+ * synthetic catalogs generated by {@link CorpusGenerator}, for each format,
+ * catalog size and variant.
+ * <p>
+ * Each combination is run once to warm up, then timed over several runs; the
+ * median run is reported, along with the highest peak heap usage of all runs.
+ * Results are written as tab-separated values, one line per combination in a
+ * fixed order, so that result files of different versions can be diffed.
+ * Throughput in bytes is measured on the input catalog.
+ */
+public class CatalogThroughput {
+
+  private static final String[] COLUMNS = {
+    "format", "messages", "variant", "seconds", "messages_per_second", "input_bytes",
+    "output_bytes", "bytes_per_second", "peak_heap_bytes", "gc_count", "gc_millis",
+  };
+
+  /**
+   * Measurements of a single run.
+   */
+  private static class Run {
+    long nanos;
+    long inputBytes;
+    long outputBytes;
+    long peakHeapBytes;
+    long gcCount;
+    long gcMillis;
+  }
+
+  private static void printUsage() {
+    System.err.println("Usage: CatalogThroughput [--formats=format[,format...]] "
+        + "[--sizes=N[,N...]] [--variants=variant[,variant...]] [--placeholders=density] "
+        + "[--plurals=density] [--markup=density] [--seed=N] [--runs=N] [--dir=directory] "
+        + "[--out=file]");
+    System.err.println("Densities are the proportion of messages, between 0 and 1");
+    System.err.println("Generated catalogs are kept in the directory and reused by later runs");
+  }
+
+  private List<String> formats = Arrays.asList(CorpusGenerator.FORMATS);
+  private List<Integer> sizes = Arrays.asList(1000, 100000, 1000000);
+  private List<String> variants = Arrays.asList("psaccent", "psbidi");
+  private double placeholderDensity = 0.3;
+  private double pluralDensity = 0.05;
+  private double markupDensity = 0.1;
+  private long seed = 1;
+  private int runs = 3;
+  private File directory = new File("corpus");
+  private File outputFile = new File("throughput.tsv");
+
+  /**
+   * @param args
+   * @throws IOException
+   */
+  public static void main(String[] args) throws IOException {
+    CatalogThroughput throughput = new CatalogThroughput();
+    try {
+      throughput.parseArguments(args);
+    } catch (IllegalArgumentException e) {
+      System.err.println(e.getMessage());
+      printUsage();
+      System.exit(1);
+    }
+    throughput.run();
+  }
+
+  private void parseArguments(String[] args) {
+    for (String arg : args) {
+      if (!arg.startsWith("--") || arg.indexOf('=') < 0) {
+        throw new IllegalArgumentException("Unrecognized argument: " + arg);
+      }
+      String name = arg.substring(2, arg.indexOf('='));
+      String value = arg.substring(arg.indexOf('=') + 1);
+      try {
+        if (name.equals("formats")) {
+          formats = Arrays.asList(value.split(","));
+        } else if (name.equals("sizes")) {
+          sizes = new ArrayList<Integer>();
+          for (String size : value.split(",")) {
+            sizes.add(Integer.parseInt(size));
+          }
+        } else if (name.equals("variants")) {
+          variants = Arrays.asList(value.split(","));
+          for (String variant : variants) {
+            if (PseudolocalizationPipeline.getVariantPipeline(variant) == null) {
+              throw new IllegalArgumentException("Unknown variant '" + variant + "'");
+            }
+          }
+        } else if (name.equals("placeholders")) {
+          placeholderDensity = Double.parseDouble(value);
+        } else if (name.equals("plurals")) {
+          pluralDensity = Double.parseDouble(value);
+        } else if (name.equals("markup")) {
+          markupDensity = Double.parseDouble(value);
+        } else if (name.equals("seed")) {
+          seed = Long.parseLong(value);
+        } else if (name.equals("runs")) {
+          runs = Integer.parseInt(value);
+        } else if (name.equals("dir")) {
+          directory = new File(value);
+        } else if (name.equals("out")) {
+          outputFile = new File(value);
+        } else {
+          throw new IllegalArgumentException("Unrecognized option: " + name);
+        }
+      } catch (NumberFormatException e) {
+        throw new IllegalArgumentException("Invalid value for --" + name + ": " + value);
+      }
+    }
+    if (runs < 1) {
+      throw new IllegalArgumentException("Invalid number of runs: " + runs);
+    }
+  }
+
+  private void run() throws IOException {
+    if (!directory.isDirectory() && !directory.mkdirs()) {
+      throw new IOException("Unable to create directory " + directory);
+    }
+    CorpusGenerator generator = new CorpusGenerator(placeholderDensity, pluralDensity,
+        markupDensity, seed);
+    PrintStream out = new PrintStream(new FileOutputStream(outputFile), true, "UTF-8");
+    try {
+      out.printf(Locale.ROOT, "# placeholders=%s plurals=%s markup=%s seed=%d runs=%d java=%s%n",
+          placeholderDensity, pluralDensity, markupDensity, seed, runs,
+          System.getProperty("java.version"));
+      out.println(Joiner.on('\t').join(COLUMNS));
+      for (String format : formats) {
+        MessageCatalog catalog = FormatRegistry.getMessageCatalog(format);
+        for (int size : sizes) {
+          File corpus = new File(directory, String.format(Locale.ROOT,
+              "corpus-%d-%s-%s-%s-%d.%s", size, placeholderDensity, pluralDensity,
+              markupDensity, seed, format));
+          if (!corpus.exists()) {
+            generate(generator, format, size, corpus);
+          }
+          for (String variant : variants) {
+            PseudolocalizationPipeline pipeline =
+                PseudolocalizationPipeline.getVariantPipeline(variant).compile();
+            File output = new File(directory, "output." + format);
+            Run result = measure(catalog, pipeline, corpus, output);
+            String row = String.format(Locale.ROOT,
+                "%s\t%d\t%s\t%.3f\t%.0f\t%d\t%d\t%.0f\t%d\t%d\t%d",
+                format, size, variant, result.nanos / 1e9, size * 1e9 / result.nanos,
+                result.inputBytes, result.outputBytes, result.inputBytes * 1e9 / result.nanos,
+                result.peakHeapBytes, result.gcCount, result.gcMillis);
+            out.println(row);
+            System.out.println(row);
+          }
+        }
+      }
+    } finally {
+      out.close();
+    }
+  }
+
+  private static void generate(CorpusGenerator generator, String format, int size, File file)
+      throws IOException {
+    OutputStream out = new BufferedOutputStream(new FileOutputStream(file));
+    try {
+      generator.generate(format, size, out);
+    } finally {
+      out.close();
+    }
+  }
+
+  /**
+   * Warm up, then time the configured number of runs.
+   *
+   * @return the median run, with the highest peak heap usage of all runs
+   */
+  private Run measure(MessageCatalog catalog, PseudolocalizationPipeline pipeline, File input,
+      File output) throws IOException {
+    runOnce(catalog, pipeline, input, output);
+    List<Run> results = new ArrayList<Run>();
+    long peakHeapBytes = 0;
+    for (int i = 0; i < runs; i++) {
+      Run result = runOnce(catalog, pipeline, input, output);
+      peakHeapBytes = Math.max(peakHeapBytes, result.peakHeapBytes);
+      results.add(result);
+    }
+    Collections.sort(results, new Comparator<Run>() {
+      public int compare(Run a, Run b) {
+        return a.nanos < b.nanos ? -1 : (a.nanos == b.nanos ? 0 : 1);
+      }
+    });
+    Run median = results.get(results.size() / 2);
+    median.peakHeapBytes = peakHeapBytes;
+    return median;
+  }
+
+  /**
+   * Read, localize and write a catalog the way the command-line tool does.
+   * <p>
+   * The peak heap usage is the sum of the peaks of each heap pool, which may
+   * have been reached at different times, so it is an upper bound.
+   */
+  private static Run runOnce(MessageCatalog catalog, PseudolocalizationPipeline pipeline,
+      File input, File output) throws IOException {
+    System.gc();
+    List<MemoryPoolMXBean> heapPools = new ArrayList<MemoryPoolMXBean>();
+    for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+      if (pool.getType() == MemoryType.HEAP) {
+        pool.resetPeakUsage();
+        heapPools.add(pool);
+      }
+    }
+    List<GarbageCollectorMXBean> collectors = ManagementFactory.getGarbageCollectorMXBeans();
+    long gcCount = 0;
+    long gcMillis = 0;
+    for (GarbageCollectorMXBean collector : collectors) {
+      gcCount -= collector.getCollectionCount();
+      gcMillis -= collector.getCollectionTime();
+    }
+
+    long start = System.nanoTime();
+    List<Message> messages = new ArrayList<Message>();
+    InputStream in = new BufferedInputStream(new FileInputStream(input));
+    try {
+      ReadableMessageCatalog readable = catalog.readFrom(in);
+      try {
+        for (Message message : readable.readMessages()) {
+          messages.add(message);
+        }
+      } finally {
+        readable.close();
+      }
+    } finally {
+      in.close();
+    }
+    pipeline.localizeAll(messages);
+    OutputStream out = new BufferedOutputStream(new FileOutputStream(output));
+    try {
+      WritableMessageCatalog writable = catalog.writeTo(out);
+      try {
+        for (Message message : messages) {
+          writable.writeMessage(message);
+        }
+      } finally {
+        writable.close();
+      }
+    } finally {
+      out.close();
+    }
+
+    Run run = new Run();
+    run.nanos = System.nanoTime() - start;
+    for (GarbageCollectorMXBean collector : collectors) {
+      gcCount += collector.getCollectionCount();
+      gcMillis += collector.getCollectionTime();
+    }
+    run.gcCount = gcCount;
+    run.gcMillis = gcMillis;
+    for (MemoryPoolMXBean pool : heapPools) {
+      run.peakHeapBytes += pool.getPeakUsage().getUsed();
+    }
+    run.inputBytes = input.length();
+    run.outputBytes = output.length();
+    return run;
+  }
+}
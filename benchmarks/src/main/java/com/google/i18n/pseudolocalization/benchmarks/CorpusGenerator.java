@@ -0,0 +1,318 @@
+/*
+ * Copyright 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.i18n.pseudolocalization.benchmarks;
+
+import com.google.common.base.Charsets;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.Random;
+
+/**
+ * Generates synthetic message catalogs in each of the registered formats.
+ * <p>
+ * Messages are a mix of short labels and sentences drawn from a fixed
+ * vocabulary, with a configurable proportion of messages containing
+ * placeholders, markup and plural forms.  The same seed always produces the
+ * same catalog, so that results can be compared across versions.  Formats with
+ * no notion of plurals ({@code properties} and {@code strings}) write plural
+ * forms as separate messages.
+ */
+public class CorpusGenerator {
+
+  /**
+   * Formats a catalog can be generated in, by file extension.
+   */
+  public static final String[] FORMATS = { "properties", "xml", "strings", "yml" };
+
+  /**
+   * Number of messages grouped under a common key prefix.
+   */
+  private static final int SECTION_SIZE = 100;
+
+  private static final String[] WORDS = {
+    "activity", "athlete", "route", "segment", "club", "challenge", "upload", "save",
+    "cancel", "delete", "share", "follow", "your", "the", "a", "of", "to", "and", "in",
+    "from", "with", "for", "on", "this", "that", "has", "been", "will", "be", "you",
+    "can", "not", "now", "time", "distance", "elevation", "pace", "speed", "heart",
+    "rate", "power", "week", "month", "year", "total", "best", "effort", "record",
+    "profile", "settings", "privacy", "notification", "friends", "map", "photo",
+  };
+
+  private final double placeholderDensity;
+
+  private final double pluralDensity;
+
+  private final double markupDensity;
+
+  private final long seed;
+
+  /**
+   * @param placeholderDensity proportion of messages containing placeholders
+   * @param pluralDensity proportion of messages which are plural forms
+   * @param markupDensity proportion of messages containing markup
+   * @param seed seed of the generated content
+   */
+  public CorpusGenerator(double placeholderDensity, double pluralDensity, double markupDensity,
+      long seed) {
+    this.placeholderDensity = placeholderDensity;
+    this.pluralDensity = pluralDensity;
+    this.markupDensity = markupDensity;
+    this.seed = seed;
+  }
+
+  /**
+   * Generate a catalog.
+   *
+   * @param format one of {@link #FORMATS}
+   * @param messages number of messages to generate, counting each plural form
+   * @param out stream to write the catalog to, which is not closed
+   * @throws IOException
+   * @throws IllegalArgumentException if the format is unknown
+   */
+  public void generate(String format, int messages, OutputStream out) throws IOException {
+    Syntax syntax = getSyntax(format);
+    Random random = new Random(seed);
+    Writer writer = new BufferedWriter(new OutputStreamWriter(out, syntax.getCharset()));
+    syntax.writeHeader(writer);
+    int section = -1;
+    for (int i = 0; i < messages; i++) {
+      if (i / SECTION_SIZE != section) {
+        section = i / SECTION_SIZE;
+        syntax.startSection(writer, "section" + section);
+      }
+      String key = "message" + i;
+      if (i + 1 < messages && (i + 1) / SECTION_SIZE == section
+          && random.nextDouble() < pluralDensity) {
+        syntax.writePlural(writer, key, generateText(random, syntax),
+            generateText(random, syntax));
+        i++;
+      } else {
+        syntax.writeMessage(writer, key, generateText(random, syntax));
+      }
+    }
+    syntax.writeFooter(writer);
+    writer.flush();
+  }
+
+  private String generateText(Random random, Syntax syntax) {
+    int words = random.nextInt(10) < 7 ? 1 + random.nextInt(4) : 8 + random.nextInt(33);
+    boolean placeholders = random.nextDouble() < placeholderDensity;
+    boolean markup = random.nextDouble() < markupDensity;
+    StringBuilder text = new StringBuilder();
+    int placeholderCount = 0;
+    for (int i = 0; i < words; i++) {
+      if (i > 0) {
+        text.append(' ');
+      }
+      String word = WORDS[random.nextInt(WORDS.length)];
+      if (i == 0) {
+        word = Character.toUpperCase(word.charAt(0)) + word.substring(1);
+      }
+      if (placeholders && placeholderCount < 3 && (i == words - 1 || random.nextInt(8) == 0)) {
+        text.append(syntax.placeholder(placeholderCount++));
+      } else if (markup && random.nextInt(4) == 0) {
+        switch (random.nextInt(3)) {
+          case 0:
+            text.append("<b>").append(word).append("</b>");
+            break;
+          case 1:
+            text.append("<a href=\"https://example.com/").append(word).append("\">")
+                .append(word).append("</a>");
+            break;
+          default:
+            text.append(word).append("<br/>");
+            break;
+        }
+      } else {
+        text.append(word);
+      }
+    }
+    if (words > 4) {
+      text.append('.');
+    }
+    return text.toString();
+  }
+
+  private static Syntax getSyntax(String format) {
+    if ("properties".equals(format)) {
+      return new PropertiesSyntax();
+    } else if ("xml".equals(format)) {
+      return new AndroidSyntax();
+    } else if ("strings".equals(format)) {
+      return new MacSyntax();
+    } else if ("yml".equals(format)) {
+      return new YamlSyntax();
+    }
+    throw new IllegalArgumentException("Unknown format '" + format + "'");
+  }
+
+  /**
+   * The syntax of a catalog format.
+   */
+  private abstract static class Syntax {
+
+    /**
+     * Key prefix of the messages being written.
+     */
+    protected String section;
+
+    public Charset getCharset() {
+      return Charsets.UTF_8;
+    }
+
+    public void writeHeader(Writer writer) throws IOException {
+    }
+
+    public void startSection(Writer writer, String section) throws IOException {
+      this.section = section;
+    }
+
+    public abstract void writeMessage(Writer writer, String key, String text) throws IOException;
+
+    public void writePlural(Writer writer, String key, String one, String other)
+        throws IOException {
+      writeMessage(writer, key + "_one", one);
+      writeMessage(writer, key + "_other", other);
+    }
+
+    public void writeFooter(Writer writer) throws IOException {
+    }
+
+    /**
+     * @param index zero-based index of the argument
+     * @return a placeholder for the argument
+     */
+    public abstract String placeholder(int index);
+  }
+
+  private static class PropertiesSyntax extends Syntax {
+
+    @Override
+    public Charset getCharset() {
+      return Charsets.ISO_8859_1;
+    }
+
+    @Override
+    public void writeMessage(Writer writer, String key, String text) throws IOException {
+      writer.write(section + "." + key + "=" + text + "\n");
+    }
+
+    @Override
+    public String placeholder(int index) {
+      return "{" + index + "}";
+    }
+  }
+
+  private static class AndroidSyntax extends Syntax {
+
+    @Override
+    public void writeHeader(Writer writer) throws IOException {
+      writer.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<resources>\n");
+    }
+
+    @Override
+    public void writeMessage(Writer writer, String key, String text) throws IOException {
+      writer.write("  <string name=\"" + section + "_" + key + "\">" + escape(text)
+          + "</string>\n");
+    }
+
+    @Override
+    public void writePlural(Writer writer, String key, String one, String other)
+        throws IOException {
+      writer.write("  <plurals name=\"" + section + "_" + key + "\">\n"
+          + "    <item quantity=\"one\">" + escape(one) + "</item>\n"
+          + "    <item quantity=\"other\">" + escape(other) + "</item>\n"
+          + "  </plurals>\n");
+    }
+
+    @Override
+    public void writeFooter(Writer writer) throws IOException {
+      writer.write("</resources>\n");
+    }
+
+    @Override
+    public String placeholder(int index) {
+      return "%" + (index + 1) + (index == 0 ? "$s" : "$d");
+    }
+
+    private static String escape(String text) {
+      return text.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;");
+    }
+  }
+
+  private static class MacSyntax extends Syntax {
+
+    @Override
+    public void startSection(Writer writer, String section) throws IOException {
+      super.startSection(writer, section);
+      writer.write("/* " + section + " */\n");
+    }
+
+    @Override
+    public void writeMessage(Writer writer, String key, String text) throws IOException {
+      writer.write("\"" + section + "." + key + "\" = \"" + text.replace("\"", "\\\"")
+          + "\";\n");
+    }
+
+    @Override
+    public String placeholder(int index) {
+      return "%" + (index + 1) + (index == 0 ? "$@" : "$d");
+    }
+  }
+
+  private static class YamlSyntax extends Syntax {
+
+    private static final String[] NAMES = { "name", "count", "date" };
+
+    @Override
+    public void writeHeader(Writer writer) throws IOException {
+      writer.write("en:\n");
+    }
+
+    @Override
+    public void startSection(Writer writer, String section) throws IOException {
+      super.startSection(writer, section);
+      writer.write("  " + section + ":\n");
+    }
+
+    @Override
+    public void writeMessage(Writer writer, String key, String text) throws IOException {
+      writer.write("    " + key + ": " + quote(text) + "\n");
+    }
+
+    @Override
+    public void writePlural(Writer writer, String key, String one, String other)
+        throws IOException {
+      writer.write("    " + key + ":\n"
+          + "      one: " + quote(one) + "\n"
+          + "      other: " + quote(other) + "\n");
+    }
+
+    @Override
+    public String placeholder(int index) {
+      return "%{" + NAMES[index] + "}";
+    }
+
+    private static String quote(String text) {
+      return "\"" + text.replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+    }
+  }
+}
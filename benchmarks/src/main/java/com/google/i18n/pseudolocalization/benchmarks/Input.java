@@ -0,0 +1,74 @@
+/*
+ * Copyright 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.i18n.pseudolocalization.benchmarks;
+
+/**
+ * Realistic message texts the benchmarks are run over.  Each text contains
+ * {@code {}} markers where a placeholder of the message format under test is
+ * substituted.
+ */
+public enum Input {
+
+  /**
+   * A short UI label.
+   */
+  LABEL("Save {} changes"),
+
+  /**
+   * A long paragraph of running text.
+   */
+  PARAGRAPH("Your activity from {} has been uploaded. It will appear in the feeds of the "
+      + "athletes who follow you, and segments you rode or ran along the way are being "
+      + "matched against the leaderboards. Matching usually takes a few seconds, but "
+      + "during busy periods it may take up to several minutes before your efforts and "
+      + "achievements show up. You can keep using the app in the meantime; we will send "
+      + "{} a notification once the analysis is complete and your personal records have "
+      + "been updated."),
+
+  /**
+   * Text with more markup than prose.
+   */
+  MARKUP("<p>By tapping <b>Continue</b>, you agree to the <a href=\"https://example.com/terms\" "
+      + "target=\"_blank\">Terms of Service</a> and the <a href='https://example.com/privacy'>"
+      + "Privacy Policy</a>.<br/>You can <i>change</i> {} at any time in "
+      + "<span class=\"setting\">Settings &gt; Privacy</span>.</p><!-- {} -->"),
+
+  /**
+   * Text with no Latin letters to substitute.
+   */
+  NON_LATIN("Ваша тренировк"
+      + "а {} загружена. "
+      + "アクティビティがアップロー"
+      + "ドされました。 "
+      + "הפעילות שלך {} "
+      + "הועלתה.");
+
+  private final String template;
+
+  private Input(String template) {
+    this.template = template;
+  }
+
+  /**
+   * Get the text of this input.
+   *
+   * @param placeholder text substituted for each placeholder marker
+   * @return the text
+   */
+  public String getText(String placeholder) {
+    return template.replace("{}", placeholder);
+  }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.i18n.pseudolocalization.benchmarks;
+
+import com.google.i18n.pseudolocalization.PseudolocalizationException;
+import com.google.i18n.pseudolocalization.format.MessageFormatMessage;
+import com.google.i18n.pseudolocalization.message.Message;
+import com.strava.i18n.pseudolocalization.format.FormattedMessage;
+import com.strava.i18n.pseudolocalization.format.MacMessage;
+import com.strava.i18n.pseudolocalization.format.YamlMessage;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Measures splitting message text into fragments, as done when reading a
+ * catalog, for each structured message type.
+ */
+@State(Scope.Thread)
+public class MessageParsingBenchmark {
+
+  /**
+   * The structured message types, with a placeholder in their syntax.
+   */
+  public enum Format {
+    FORMATTED("%1$s") {
+      @Override
+      Message parse(String text) {
+        return new FormattedMessage("key", text);
+      }
+    },
+    MAC("%@") {
+      @Override
+      Message parse(String text) {
+        return new MacMessage("key", text);
+      }
+    },
+    MESSAGE_FORMAT("{0,number}") {
+      @Override
+      Message parse(String text) {
+        return new MessageFormatMessage("key", text);
+      }
+    },
+    YAML("%{name}") {
+      @Override
+      Message parse(String text) throws PseudolocalizationException {
+        return new YamlMessage("key", text);
+      }
+    };
+
+    private final String placeholder;
+
+    private Format(String placeholder) {
+      this.placeholder = placeholder;
+    }
+
+    abstract Message parse(String text) throws PseudolocalizationException;
+  }
+
+  @Param
+  public Format format;
+
+  @Param
+  public Input input;
+
+  private String text;
+
+  @Setup
+  public void setUp() {
+    text = input.getText(format.placeholder);
+  }
+
+  @Benchmark
+  public Message parse() throws PseudolocalizationException {
+    return format.parse(text);
+  }
+}
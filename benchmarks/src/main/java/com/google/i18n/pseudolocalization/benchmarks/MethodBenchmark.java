@@ -0,0 +1,53 @@
+/*
+ * Copyright 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.i18n.pseudolocalization.benchmarks;
+
+import com.google.i18n.pseudolocalization.PseudolocalizationPipeline;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Measures each registered pseudolocalization method in isolation, applied to
+ * a message with no structure.
+ */
+@State(Scope.Thread)
+public class MethodBenchmark {
+
+  @Param({ "accents", "brackets", "expand", "fakebidi", "html", "piglatin" })
+  public String method;
+
+  @Param
+  public Input input;
+
+  private PseudolocalizationPipeline pipeline;
+
+  private String text;
+
+  @Setup
+  public void setUp() {
+    pipeline = PseudolocalizationPipeline.buildPipeline(method);
+    text = input.getText("Alex");
+  }
+
+  @Benchmark
+  public String localize() {
+    return pipeline.localize(text);
+  }
+}
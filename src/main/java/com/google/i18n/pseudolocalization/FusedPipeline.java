@@ -0,0 +1,510 @@
+/*
+ * Copyright 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.i18n.pseudolocalization;
+
+import com.google.i18n.pseudolocalization.jfr.MessageLocalizedEvent;
+import com.google.i18n.pseudolocalization.message.DefaultVisitor;
+import com.google.i18n.pseudolocalization.message.Message;
+import com.google.i18n.pseudolocalization.message.MessageFragment;
+import com.google.i18n.pseudolocalization.message.MessageFragmentVisitor;
+import com.google.i18n.pseudolocalization.message.NonlocalizableTextFragment;
+import com.google.i18n.pseudolocalization.message.Placeholder;
+import com.google.i18n.pseudolocalization.message.TextFragment;
+import com.google.i18n.pseudolocalization.message.VariantFragment;
+import com.google.i18n.pseudolocalization.message.VariantFragmentVisitor;
+import com.google.i18n.pseudolocalization.message.VisitorContext;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A {@link PseudolocalizationPipeline} which applies all of its methods during
+ * a single traversal of each message.
+ * <p>
+ * Each fragment of the message is passed through every method in turn before
+ * the next fragment is visited, and the message itself is only edited once
+ * per original fragment.  Consecutive {@link TextFragmentTransformer}s are
+ * chained directly on the fragment text, and methods which do not visit
+ * fragments at all (such as {@code brackets}) only run their
+ * {@code visitMessage}/{@code endMessage} hooks, whose insertions at the
+ * message boundaries are kept in a prologue and an epilogue.
+ * <p>
+ * Messages without any localizable text (no {@link TextFragment} nor
+ * {@link VariantFragment}) skip the chain entirely: their placeholders and
+ * non-localizable fragments are not passed to the methods, which only run
+ * their {@code visitMessage}/{@code endMessage} hooks.
+ * <p>
+ * While visiting a fragment, a method may only edit that fragment (or the
+ * fragments it was replaced with by earlier methods) and the message
+ * boundaries; any other edit fails with a {@link RuntimeException}.
+ * <p>
+ * The localization of each message is recorded as a
+ * {@link MessageLocalizedEvent} if it is enabled.
+ */
+class FusedPipeline extends PseudolocalizationPipeline {
+
+  /**
+   * The methods of the thread which compiled this pipeline, which are also
+   * those of every thread if the methods are shared.
+   */
+  private final Stages stages;
+
+  /**
+   * The methods of other threads, if methods are not shared.
+   */
+  private final ThreadLocal<Stages> threadStages = new ThreadLocal<Stages>() {
+    @Override
+    protected Stages initialValue() {
+      return new Stages(getMethods());
+    }
+  };
+
+  FusedPipeline(PseudolocalizationPipeline pipeline) {
+    super(pipeline);
+    stages = new Stages(getMethods());
+  }
+
+  @Override
+  public PseudolocalizationPipeline compile() {
+    return this;
+  }
+
+  @Override
+  public void localize(Message message) {
+    localizeBlock(Collections.singletonList(message));
+  }
+
+  /**
+   * Each message is already localized in a single traversal, so a block is
+   * simply localized one message at a time.
+   */
+  @Override
+  protected void localizeBlock(List<? extends Message> block) {
+    List<PseudolocalizationMethod> methods = getMethods();
+    if (methods.isEmpty()) {
+      return;
+    }
+    Stages current = methods == stages.source ? stages : threadStages.get();
+    if (!MessageLocalizedEvent.isRecorded()) {
+      for (Message message : block) {
+        message.accept(new Pass(current));
+      }
+      return;
+    }
+    for (Message message : block) {
+      MessageLocalizedEvent event = new MessageLocalizedEvent();
+      event.begin();
+      message.accept(new Pass(current));
+      event.end();
+      if (event.shouldCommit()) {
+        event.methods = getMethodNames(methods);
+        event.message = message.getId();
+        event.commit();
+      }
+    }
+  }
+
+  /**
+   * The methods used by a thread, classified once for all the messages it
+   * localizes.
+   */
+  private static class Stages {
+
+    private final List<PseudolocalizationMethod> source;
+
+    private final PseudolocalizationMethod[] methods;
+
+    /**
+     * For each method, the same instance if it is a
+     * {@link TextFragmentTransformer}, null otherwise.
+     */
+    private final TextFragmentTransformer[] transformers;
+
+    Stages(List<PseudolocalizationMethod> source) {
+      this.source = source;
+      methods = source.toArray(new PseudolocalizationMethod[source.size()]);
+      transformers = new TextFragmentTransformer[methods.length];
+      for (int i = 0; i < methods.length; i++) {
+        if (methods[i] instanceof TextFragmentTransformer) {
+          transformers[i] = (TextFragmentTransformer) methods[i];
+        }
+      }
+    }
+  }
+
+  /**
+   * The state of localizing a single message.
+   */
+  private class Pass extends DefaultVisitor {
+
+    private final PseudolocalizationMethod[] methods;
+
+    private final TextFragmentTransformer[] transformers;
+
+    /**
+     * The fragment visitor returned by each method for this message, null if
+     * the method does not visit fragments (or is a transformer).
+     */
+    private final MessageFragmentVisitor[] visitors;
+
+    private final StageContext[] contexts;
+
+    /**
+     * Fragments inserted at the beginning and at the end of the message by
+     * each method, already passed through all later methods; null until a
+     * method inserts one, as are the lists of methods which did not.
+     */
+    private List<List<MessageFragment>> prologues;
+    private List<List<MessageFragment>> epilogues;
+
+    /**
+     * True while methods are being started, during which boundary fragments
+     * cannot be passed through later methods yet.
+     */
+    private boolean starting;
+
+    /**
+     * Boundary fragments inserted while starting, null if there are none.
+     */
+    private List<Insertion> deferred;
+
+    private VisitorContext target;
+
+    private Message message;
+
+    /**
+     * True once a fragment with localizable text has been visited.
+     */
+    private boolean hasText;
+
+    /**
+     * Fragments without localizable text visited before the first one with
+     * some, which are only passed through the methods if such a fragment
+     * follows; null if there are none.
+     */
+    private List<MessageFragment> leading;
+
+    Pass(Stages stages) {
+      methods = stages.methods;
+      transformers = stages.transformers;
+      visitors = new MessageFragmentVisitor[methods.length];
+      contexts = new StageContext[methods.length];
+    }
+
+    @Override
+    public MessageFragmentVisitor visitMessage(VisitorContext ctx, Message msg) {
+      target = ctx;
+      message = msg;
+      hasText = false;
+      leading = null;
+      starting = true;
+      for (int i = 0; i < methods.length; i++) {
+        if (transformers[i] == null) {
+          contexts[i] = new StageContext(i);
+          visitors[i] = methods[i].visitMessage(contexts[i], msg);
+        }
+      }
+      starting = false;
+      if (deferred != null) {
+        for (Insertion insertion : deferred) {
+          if (insertion.prologue) {
+            prepend(insertion.stage, insertion.fragment);
+          } else {
+            append(insertion.stage, insertion.fragment);
+          }
+        }
+        deferred = null;
+      }
+      return this;
+    }
+
+    @Override
+    public void endMessage(VisitorContext ctx, Message msg) {
+      for (int i = 0; i < methods.length; i++) {
+        if (transformers[i] == null) {
+          methods[i].endMessage(contexts[i], msg);
+        }
+      }
+      if (prologues != null) {
+        for (List<MessageFragment> prologue : prologues) {
+          for (int j = prologue == null ? 0 : prologue.size(); j-- > 0; ) {
+            target.insertBefore(null, prologue.get(j));
+          }
+        }
+      }
+      if (epilogues != null) {
+        for (List<MessageFragment> epilogue : epilogues) {
+          if (epilogue != null) {
+            for (MessageFragment fragment : epilogue) {
+              target.insertAfter(null, fragment);
+            }
+          }
+        }
+      }
+    }
+
+    @Override
+    public void visitNonlocalizableTextFragment(VisitorContext ctx,
+        NonlocalizableTextFragment fragment) {
+      commitWithoutText(fragment);
+    }
+
+    @Override
+    public void visitPlaceholder(VisitorContext ctx, Placeholder placeholder) {
+      commitWithoutText(placeholder);
+    }
+
+    @Override
+    public void visitTextFragment(VisitorContext ctx, TextFragment fragment) {
+      commitWithText(fragment);
+    }
+
+    @Override
+    public VariantFragmentVisitor visitVariantFragment(VisitorContext ctx,
+        VariantFragment fragment) {
+      // each method traverses the variant fragment itself
+      commitWithText(fragment);
+      return null;
+    }
+
+    /**
+     * Pass a fragment without localizable text through all methods, unless no
+     * fragment with some has been visited yet, in which case it is held back.
+     */
+    private void commitWithoutText(MessageFragment fragment) {
+      if (hasText) {
+        commit(fragment);
+        return;
+      }
+      if (leading == null) {
+        leading = new ArrayList<MessageFragment>();
+      }
+      leading.add(fragment);
+    }
+
+    /**
+     * Pass a fragment with localizable text through all methods, after the
+     * fragments held back before it.
+     */
+    private void commitWithText(MessageFragment fragment) {
+      if (!hasText) {
+        hasText = true;
+        if (leading != null) {
+          for (MessageFragment previous : leading) {
+            commit(previous);
+          }
+          leading = null;
+        }
+      }
+      commit(fragment);
+    }
+
+    /**
+     * Pass an original fragment of the message through all methods, and
+     * replace it in the message if it was changed.
+     */
+    private void commit(MessageFragment fragment) {
+      List<MessageFragment> result = pipe(fragment, 0);
+      if (result.size() != 1 || result.get(0) != fragment) {
+        target.replaceFragment(fragment, result);
+      }
+    }
+
+    /**
+     * Pass a fragment through the methods starting at {@code first}.
+     *
+     * @return the fragments it was turned into
+     */
+    private List<MessageFragment> pipe(MessageFragment fragment, int first) {
+      List<MessageFragment> current = null;
+      for (int i = first; i < methods.length; i++) {
+        if (transformers[i] != null) {
+          int end = i + 1;
+          while (end < methods.length && transformers[end] != null) {
+            end++;
+          }
+          if (current == null) {
+            fragment = transform(fragment, i, end);
+          } else {
+            for (int j = 0; j < current.size(); j++) {
+              current.set(j, transform(current.get(j), i, end));
+            }
+          }
+          i = end - 1;
+        } else if (visitors[i] != null) {
+          List<MessageFragment> input = current;
+          if (input == null) {
+            input = Collections.singletonList(fragment);
+          }
+          current = new ArrayList<MessageFragment>(input);
+          StageContext stageContext = contexts[i];
+          List<MessageFragment> saved = stageContext.fragments;
+          stageContext.fragments = current;
+          try {
+            for (MessageFragment frag : input) {
+              frag.accept(stageContext, visitors[i]);
+            }
+          } finally {
+            stageContext.fragments = saved;
+          }
+        }
+      }
+      return current != null ? current : Collections.singletonList(fragment);
+    }
+
+    /**
+     * Apply the transformers in {@code [from, to)} to a fragment.
+     */
+    private MessageFragment transform(MessageFragment fragment, int from, int to) {
+      if (fragment instanceof VariantFragment) {
+        // variant forms are edited in place, as in an uncompiled pipeline
+        for (int i = from; i < to; i++) {
+          MessageFragmentVisitor visitor = transformers[i].visitMessage(target, message);
+          if (visitor != null) {
+            fragment.accept(target, visitor);
+          }
+        }
+        return fragment;
+      }
+      if (!(fragment instanceof TextFragment)) {
+        return fragment;
+      }
+      String text = ((TextFragment) fragment).getText();
+      for (int i = from; i < to; i++) {
+        text = transformers[i].transform(text);
+      }
+      return target.createTextFragment(text);
+    }
+
+    private void prepend(int stage, MessageFragment fragment) {
+      if (starting) {
+        defer(new Insertion(stage, true, fragment));
+        return;
+      }
+      if (prologues == null) {
+        prologues = newBoundaryLists();
+      }
+      boundaryList(prologues, stage).addAll(0, pipe(fragment, stage + 1));
+    }
+
+    private void append(int stage, MessageFragment fragment) {
+      if (starting) {
+        defer(new Insertion(stage, false, fragment));
+        return;
+      }
+      if (epilogues == null) {
+        epilogues = newBoundaryLists();
+      }
+      boundaryList(epilogues, stage).addAll(pipe(fragment, stage + 1));
+    }
+
+    private void defer(Insertion insertion) {
+      if (deferred == null) {
+        deferred = new ArrayList<Insertion>();
+      }
+      deferred.add(insertion);
+    }
+
+    private List<List<MessageFragment>> newBoundaryLists() {
+      return new ArrayList<List<MessageFragment>>(
+          Collections.<List<MessageFragment>>nCopies(methods.length, null));
+    }
+
+    private List<MessageFragment> boundaryList(List<List<MessageFragment>> lists, int stage) {
+      List<MessageFragment> list = lists.get(stage);
+      if (list == null) {
+        list = new ArrayList<MessageFragment>();
+        lists.set(stage, list);
+      }
+      return list;
+    }
+
+    /**
+     * The {@link VisitorContext} seen by a single method, which edits the
+     * fragments derived from the original fragment currently being visited.
+     */
+    private class StageContext implements VisitorContext {
+
+      private final int stage;
+
+      private List<MessageFragment> fragments;
+
+      StageContext(int stage) {
+        this.stage = stage;
+      }
+
+      public NonlocalizableTextFragment createNonlocalizableTextFragment(String text) {
+        return target.createNonlocalizableTextFragment(text);
+      }
+
+      public TextFragment createTextFragment(String text) {
+        return target.createTextFragment(text);
+      }
+
+      public void insertAfter(MessageFragment reference, MessageFragment newFrag) {
+        if (reference == null) {
+          append(stage, newFrag);
+        } else {
+          fragments.add(indexOfReference(reference) + 1, newFrag);
+        }
+      }
+
+      public void insertBefore(MessageFragment reference, MessageFragment newFrag) {
+        if (reference == null) {
+          prepend(stage, newFrag);
+        } else {
+          fragments.add(indexOfReference(reference), newFrag);
+        }
+      }
+
+      public void replaceFragment(MessageFragment fragment, List<MessageFragment> replacements) {
+        int index = indexOfReference(fragment);
+        fragments.remove(index);
+        fragments.addAll(index, replacements);
+      }
+
+      public void replaceFragment(MessageFragment fragment, MessageFragment... replacements) {
+        replaceFragment(fragment, Arrays.asList(replacements));
+      }
+
+      private int indexOfReference(MessageFragment reference) {
+        int index = fragments == null ? -1 : fragments.indexOf(reference);
+        if (index < 0) {
+          throw new RuntimeException("missing reference fragment");
+        }
+        return index;
+      }
+    }
+  }
+
+  /**
+   * A fragment inserted at a message boundary by a method.
+   */
+  private static class Insertion {
+
+    private final int stage;
+    private final boolean prologue;
+    private final MessageFragment fragment;
+
+    Insertion(int stage, boolean prologue, MessageFragment fragment) {
+      this.stage = stage;
+      this.prologue = prologue;
+      this.fragment = fragment;
+    }
+  }
+}
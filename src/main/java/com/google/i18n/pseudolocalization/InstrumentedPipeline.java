@@ -0,0 +1,227 @@
+/*
+ * Copyright 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.i18n.pseudolocalization;
+
+import com.google.i18n.pseudolocalization.jfr.MethodAppliedEvent;
+import com.google.i18n.pseudolocalization.message.Message;
+import com.google.i18n.pseudolocalization.message.MessageFragment;
+import com.google.i18n.pseudolocalization.message.MessageFragmentVisitor;
+import com.google.i18n.pseudolocalization.message.NonlocalizableTextFragment;
+import com.google.i18n.pseudolocalization.message.Placeholder;
+import com.google.i18n.pseudolocalization.message.TextFragment;
+import com.google.i18n.pseudolocalization.message.VariantForm;
+import com.google.i18n.pseudolocalization.message.VariantFormVisitor;
+import com.google.i18n.pseudolocalization.message.VariantFragment;
+import com.google.i18n.pseudolocalization.message.VariantFragmentVisitor;
+import com.google.i18n.pseudolocalization.message.VariantSelector;
+import com.google.i18n.pseudolocalization.message.VisitorContext;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A pipeline which reports the time spent in each method, and the fragments
+ * each method creates and replaces, to a {@link PseudolocalizationListener},
+ * and records each method applied to each message as a
+ * {@link MethodAppliedEvent} if enabled.
+ * <p>
+ * So that time can be attributed to each method, methods are applied one at a
+ * time, even if the pipeline this one was created from was compiled.  Each
+ * method sees a {@link VisitorContext} which counts edits before passing them
+ * on to the context of the message.
+ */
+class InstrumentedPipeline extends PseudolocalizationPipeline {
+
+  private final PseudolocalizationListener listener;
+
+  InstrumentedPipeline(PseudolocalizationPipeline pipeline, PseudolocalizationListener listener) {
+    super(pipeline);
+    this.listener = listener;
+  }
+
+  @Override
+  public PseudolocalizationPipeline compile() {
+    return this;
+  }
+
+  @Override
+  public void localize(Message message) {
+    localizeBlock(Collections.singletonList(message));
+  }
+
+  @Override
+  protected void localizeBlock(List<? extends Message> block) {
+    applyMethods(block);
+  }
+
+  /**
+   * Apply methods to a block of messages one at a time, recording a
+   * {@link MethodAppliedEvent} for each method and message if enabled.
+   *
+   * @param block
+   */
+  private void applyMethods(List<? extends Message> block) {
+    for (PseudolocalizationMethod method : getMethods()) {
+      CountingMethod counter = new CountingMethod(method);
+      for (Message message : block) {
+        counter.created = 0;
+        counter.replaced = 0;
+        MethodAppliedEvent event = new MethodAppliedEvent();
+        event.begin();
+        long start = System.nanoTime();
+        message.accept(counter);
+        long nanos = System.nanoTime() - start;
+        event.end();
+        if (event.shouldCommit()) {
+          event.method = method.getClass().getSimpleName();
+          event.message = message.getId();
+          event.fragmentsCreated = counter.created;
+          event.fragmentsReplaced = counter.replaced;
+          event.commit();
+        }
+        if (listener != null) {
+          listener.methodApplied(method, nanos, counter.created, counter.replaced);
+        }
+      }
+    }
+  }
+
+  /**
+   * Applies a method, giving it a context which counts its edits.  Since the
+   * context of a message is passed along its whole visit, each visitor the
+   * method returns is wrapped to substitute the counting context.
+   * <p>
+   * Fragments are counted as created when they are inserted into the message,
+   * not when the context creates them, so that fragments a method constructs
+   * itself are counted too.
+   */
+  private static class CountingMethod implements PseudolocalizationMethod, VisitorContext {
+
+    private final PseudolocalizationMethod method;
+
+    private VisitorContext target;
+
+    int created;
+
+    int replaced;
+
+    CountingMethod(PseudolocalizationMethod method) {
+      this.method = method;
+    }
+
+    private VisitorContext wrap(VisitorContext ctx) {
+      target = ctx;
+      return this;
+    }
+
+    public MessageFragmentVisitor visitMessage(VisitorContext ctx, Message message) {
+      return wrap(method.visitMessage(wrap(ctx), message));
+    }
+
+    public void endMessage(VisitorContext ctx, Message message) {
+      method.endMessage(wrap(ctx), message);
+    }
+
+    private MessageFragmentVisitor wrap(final MessageFragmentVisitor visitor) {
+      if (visitor == null) {
+        return null;
+      }
+      return new MessageFragmentVisitor() {
+        public void visitNonlocalizableTextFragment(VisitorContext ctx,
+            NonlocalizableTextFragment fragment) {
+          visitor.visitNonlocalizableTextFragment(wrap(ctx), fragment);
+        }
+
+        public void visitPlaceholder(VisitorContext ctx, Placeholder placeholder) {
+          visitor.visitPlaceholder(wrap(ctx), placeholder);
+        }
+
+        public void visitTextFragment(VisitorContext ctx, TextFragment fragment) {
+          visitor.visitTextFragment(wrap(ctx), fragment);
+        }
+
+        public VariantFragmentVisitor visitVariantFragment(VisitorContext ctx,
+            VariantFragment fragment) {
+          return wrap(visitor.visitVariantFragment(wrap(ctx), fragment));
+        }
+      };
+    }
+
+    private VariantFragmentVisitor wrap(final VariantFragmentVisitor visitor) {
+      if (visitor == null) {
+        return null;
+      }
+      return new VariantFragmentVisitor() {
+        public void endSelector(VisitorContext ctx, VariantSelector selector) {
+          visitor.endSelector(wrap(ctx), selector);
+        }
+
+        public void endVariantFragment(VisitorContext ctx, VariantFragment fragment) {
+          visitor.endVariantFragment(wrap(ctx), fragment);
+        }
+
+        public VariantFormVisitor visitSelector(VisitorContext ctx, VariantSelector selector) {
+          return wrap(visitor.visitSelector(wrap(ctx), selector));
+        }
+      };
+    }
+
+    private VariantFormVisitor wrap(final VariantFormVisitor visitor) {
+      if (visitor == null) {
+        return null;
+      }
+      return new VariantFormVisitor() {
+        public void endVariantForm(VisitorContext ctx, VariantForm form) {
+          visitor.endVariantForm(wrap(ctx), form);
+        }
+
+        public MessageFragmentVisitor visitVariantForm(VisitorContext ctx, VariantForm form) {
+          return wrap(visitor.visitVariantForm(wrap(ctx), form));
+        }
+      };
+    }
+
+    public TextFragment createTextFragment(String text) {
+      return target.createTextFragment(text);
+    }
+
+    public NonlocalizableTextFragment createNonlocalizableTextFragment(String text) {
+      return target.createNonlocalizableTextFragment(text);
+    }
+
+    public void insertAfter(MessageFragment reference, MessageFragment newFrag) {
+      created++;
+      target.insertAfter(reference, newFrag);
+    }
+
+    public void insertBefore(MessageFragment reference, MessageFragment newFrag) {
+      created++;
+      target.insertBefore(reference, newFrag);
+    }
+
+    public void replaceFragment(MessageFragment fragment, List<MessageFragment> replacements) {
+      created += replacements.size();
+      replaced++;
+      target.replaceFragment(fragment, replacements);
+    }
+
+    public void replaceFragment(MessageFragment fragment, MessageFragment... replacements) {
+      created += replacements.length;
+      replaced++;
+      target.replaceFragment(fragment, replacements);
+    }
+  }
+}
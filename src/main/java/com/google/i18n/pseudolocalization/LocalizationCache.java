@@ -0,0 +1,224 @@
+/*
+ * Copyright 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.i18n.pseudolocalization;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import com.google.i18n.pseudolocalization.message.Message;
+
+import java.lang.ref.WeakReference;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * A bounded cache of the results of {@link PseudolocalizationPipeline#localize(String)},
+ * for callers which repeatedly localize a small set of strings.
+ * <p>
+ * Entries are keyed on the identity of the pipeline and the text to localize,
+ * so that a single cache may be shared by several pipelines.  When the cache
+ * is full, the least recently used entries are evicted.  Lookups may be made
+ * concurrently, provided the pipelines used are thread-safe (see
+ * {@link PseudolocalizationPipeline#isThreadSafe()}).
+ * <p>
+ * As pipelines are compared by identity, a pipeline should be built and
+ * {@link #wrap wrapped} once, then reused for as long as it is needed:
+ * equivalent pipelines built separately, such as those returned by each call
+ * to {@link PseudolocalizationPipeline#getVariantPipeline(java.util.Map, String)}
+ * with options, do not share entries.  Pipelines are only weakly referenced by
+ * the cache, and the entries of a pipeline which is no longer used are evicted
+ * as other entries are added.
+ * <p>
+ * Only unstructured text is cached; structured messages passed to
+ * {@link PseudolocalizationPipeline#localize(Message)} are always localized.
+ */
+public class LocalizationCache {
+
+  /**
+   * A cache key: a pipeline, weakly referenced and compared by identity, and
+   * the text to localize.  Once the pipeline is collected, the key is only
+   * equal to itself.
+   */
+  private static class Key {
+
+    private final WeakReference<PseudolocalizationPipeline> pipeline;
+
+    private final int pipelineHash;
+
+    private final String text;
+
+    public Key(PseudolocalizationPipeline pipeline, String text) {
+      this.pipeline = new WeakReference<PseudolocalizationPipeline>(pipeline);
+      this.pipelineHash = System.identityHashCode(pipeline);
+      this.text = text;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (obj == this) {
+        return true;
+      }
+      if (!(obj instanceof Key)) {
+        return false;
+      }
+      Key other = (Key) obj;
+      PseudolocalizationPipeline referent = pipeline.get();
+      return referent != null && referent == other.pipeline.get() && text.equals(other.text);
+    }
+
+    @Override
+    public int hashCode() {
+      return pipelineHash * 31 + text.hashCode();
+    }
+  }
+
+  /**
+   * A pipeline which looks up unstructured text in the cache before
+   * localizing it with the pipeline it wraps.
+   */
+  private class CachingPipeline extends PseudolocalizationPipeline {
+
+    private final PseudolocalizationPipeline delegate;
+
+    public CachingPipeline(PseudolocalizationPipeline delegate) {
+      super(delegate);
+      this.delegate = delegate;
+    }
+
+    @Override
+    public PseudolocalizationPipeline compile() {
+      return wrap(delegate.compile());
+    }
+
+    @Override
+    public boolean isThreadSafe() {
+      return delegate.isThreadSafe();
+    }
+
+    @Override
+    public void localize(Message message) {
+      delegate.localize(message);
+    }
+
+    @Override
+    protected void localizeBlock(List<? extends Message> block) {
+      delegate.localizeBlock(block);
+    }
+
+    @Override
+    public String localize(String text) {
+      return LocalizationCache.this.localize(delegate, text);
+    }
+  }
+
+  private final Cache<Key, String> cache;
+
+  /**
+   * Create a cache holding at most {@code maximumSize} localized strings.
+   *
+   * @param maximumSize
+   */
+  public LocalizationCache(long maximumSize) {
+    cache = CacheBuilder.newBuilder()
+        .maximumSize(maximumSize)
+        .recordStats()
+        .build();
+  }
+
+  /**
+   * Localize text with a pipeline, returning a cached result if this text was
+   * already localized with the same pipeline.
+   *
+   * @param pipeline
+   * @param text
+   * @return localized text
+   */
+  public String localize(final PseudolocalizationPipeline pipeline, final String text) {
+    try {
+      // the loader holds the pipeline, which the key does not keep alive
+      return cache.get(new Key(pipeline, text), new Callable<String>() {
+        public String call() {
+          return pipeline.localize(text);
+        }
+      });
+    } catch (UncheckedExecutionException e) {
+      // rethrow the original failure of the pipeline
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw e;
+    } catch (ExecutionException e) {
+      // localize(String) throws no checked exception
+      throw new RuntimeException(e.getCause());
+    }
+  }
+
+  /**
+   * Return a pipeline which applies the same methods as the supplied one, and
+   * localizes unstructured text through this cache.  The returned pipeline
+   * should be kept and reused, see the class documentation.
+   *
+   * @param pipeline
+   * @return caching pipeline
+   */
+  public PseudolocalizationPipeline wrap(PseudolocalizationPipeline pipeline) {
+    return new CachingPipeline(pipeline);
+  }
+
+  /**
+   * Discard all cached entries; statistics are not reset.
+   */
+  public void invalidateAll() {
+    cache.invalidateAll();
+  }
+
+  /**
+   * @return the number of cached entries
+   */
+  public long size() {
+    return cache.size();
+  }
+
+  /**
+   * @return the number of lookups which returned a cached entry
+   */
+  public long getHitCount() {
+    return cache.stats().hitCount();
+  }
+
+  /**
+   * @return the number of lookups which had to localize the text
+   */
+  public long getMissCount() {
+    return cache.stats().missCount();
+  }
+
+  /**
+   * @return the number of entries evicted because the cache was full
+   */
+  public long getEvictionCount() {
+    return cache.stats().evictionCount();
+  }
+
+  /**
+   * @return a snapshot of all cache statistics
+   */
+  public CacheStats getStats() {
+    return cache.stats();
+  }
+}
@@ -0,0 +1,176 @@
+/*
+ * Copyright 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.i18n.pseudolocalization;
+
+import java.io.PrintStream;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * A {@link PseudolocalizationListener} which adds up the measurements it
+ * receives, per method class and per catalog direction, and reports them as
+ * text or JSON.  It may be shared between threads.
+ */
+public class PipelineStats implements PseudolocalizationListener {
+
+  /**
+   * Totals for the methods of a class.
+   */
+  private static class MethodStats {
+    long invocations;
+    long nanos;
+    long fragmentsCreated;
+    long fragmentsReplaced;
+  }
+
+  /**
+   * Totals for catalogs read or written.
+   */
+  private static class CatalogStats {
+    long messages;
+    long bytes;
+    long nanos;
+  }
+
+  private final Map<String, MethodStats> methods = new LinkedHashMap<String, MethodStats>();
+
+  private final CatalogStats read = new CatalogStats();
+
+  private final CatalogStats written = new CatalogStats();
+
+  public synchronized void methodApplied(PseudolocalizationMethod method, long nanos,
+      int fragmentsCreated, int fragmentsReplaced) {
+    String name = method.getClass().getSimpleName();
+    if (name.length() == 0) {
+      name = method.getClass().getName();
+    }
+    MethodStats stats = methods.get(name);
+    if (stats == null) {
+      stats = new MethodStats();
+      methods.put(name, stats);
+    }
+    stats.invocations++;
+    stats.nanos += nanos;
+    stats.fragmentsCreated += fragmentsCreated;
+    stats.fragmentsReplaced += fragmentsReplaced;
+  }
+
+  public synchronized void catalogRead(int messages, long bytes, long nanos) {
+    add(read, messages, bytes, nanos);
+  }
+
+  public synchronized void catalogWritten(int messages, long bytes, long nanos) {
+    add(written, messages, bytes, nanos);
+  }
+
+  private static void add(CatalogStats stats, int messages, long bytes, long nanos) {
+    stats.messages += messages;
+    stats.bytes += bytes;
+    stats.nanos += nanos;
+  }
+
+  /**
+   * Print a table of the totals, in the order methods were first applied.
+   *
+   * @param out
+   */
+  public synchronized void printReport(PrintStream out) {
+    out.printf(Locale.ROOT, "  %-20s %10s %12s %10s %10s%n", "method", "messages", "millis",
+        "created", "replaced");
+    for (Map.Entry<String, MethodStats> entry : methods.entrySet()) {
+      MethodStats stats = entry.getValue();
+      out.printf(Locale.ROOT, "  %-20s %10d %12.3f %10d %10d%n", entry.getKey(),
+          stats.invocations, stats.nanos / 1e6, stats.fragmentsCreated, stats.fragmentsReplaced);
+    }
+    out.printf(Locale.ROOT, "  %-20s %10s %12s %10s%n", "catalog", "messages", "millis", "bytes");
+    out.printf(Locale.ROOT, "  %-20s %10d %12.3f %10d%n", "read", read.messages,
+        read.nanos / 1e6, read.bytes);
+    out.printf(Locale.ROOT, "  %-20s %10d %12.3f %10d%n", "write", written.messages,
+        written.nanos / 1e6, written.bytes);
+  }
+
+  /**
+   * @return the totals as a JSON object
+   */
+  public synchronized String toJson() {
+    StringBuilder json = new StringBuilder("{\"methods\":[");
+    String separator = "";
+    for (Map.Entry<String, MethodStats> entry : methods.entrySet()) {
+      MethodStats stats = entry.getValue();
+      json.append(separator).append("{\"name\":");
+      appendJsonString(json, entry.getKey());
+      json.append(",\"invocations\":").append(stats.invocations)
+          .append(",\"nanos\":").append(stats.nanos)
+          .append(",\"fragmentsCreated\":").append(stats.fragmentsCreated)
+          .append(",\"fragmentsReplaced\":").append(stats.fragmentsReplaced).append('}');
+      separator = ",";
+    }
+    json.append("],\"read\":");
+    appendJson(json, read);
+    json.append(",\"write\":");
+    appendJson(json, written);
+    return json.append('}').toString();
+  }
+
+  /**
+   * Quote a string as a JSON string literal.
+   *
+   * @param value
+   * @return the quoted string
+   */
+  public static String toJsonString(String value) {
+    StringBuilder json = new StringBuilder(value.length() + 2);
+    appendJsonString(json, value);
+    return json.toString();
+  }
+
+  private static void appendJsonString(StringBuilder json, String value) {
+    json.append('"');
+    for (int i = 0; i < value.length(); i++) {
+      char ch = value.charAt(i);
+      switch (ch) {
+        case '"':
+        case '\\':
+          json.append('\\').append(ch);
+          break;
+        case '\n':
+          json.append("\\n");
+          break;
+        case '\r':
+          json.append("\\r");
+          break;
+        case '\t':
+          json.append("\\t");
+          break;
+        default:
+          if (ch < 0x20) {
+            json.append(String.format(Locale.ROOT, "\\u%04x", (int) ch));
+          } else {
+            json.append(ch);
+          }
+          break;
+      }
+    }
+    json.append('"');
+  }
+
+  private static void appendJson(StringBuilder json, CatalogStats stats) {
+    json.append("{\"messages\":").append(stats.messages)
+        .append(",\"bytes\":").append(stats.bytes)
+        .append(",\"nanos\":").append(stats.nanos).append('}');
+  }
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.i18n.pseudolocalization;
+
+/**
+ * Receives measurements of the work done by a pipeline instrumented with
+ * {@link PseudolocalizationPipeline#instrument}, and by message catalogs
+ * wrapped in an
+ * {@link com.google.i18n.pseudolocalization.format.InstrumentedMessageCatalog}.
+ * <p>
+ * Listeners of a thread-safe pipeline may be called from several threads at
+ * once.
+ *
+ * @see PipelineStats
+ */
+public interface PseudolocalizationListener {
+
+  /**
+   * Called after a method has been applied to a message.
+   *
+   * @param method
+   * @param nanos time spent visiting the message
+   * @param fragmentsCreated number of fragments inserted, or put in place of
+   *     replaced fragments, through the
+   *     {@link com.google.i18n.pseudolocalization.message.VisitorContext}
+   * @param fragmentsReplaced number of fragments replaced through the
+   *     {@link com.google.i18n.pseudolocalization.message.VisitorContext}
+   */
+  void methodApplied(PseudolocalizationMethod method, long nanos, int fragmentsCreated,
+      int fragmentsReplaced);
+
+  /**
+   * Called when a catalog has been read and closed.
+   *
+   * @param messages number of messages read
+   * @param bytes number of bytes read
+   * @param nanos time spent parsing, including reading the input
+   */
+  void catalogRead(int messages, long bytes, long nanos);
+
+  /**
+   * Called when a catalog has been written and closed.
+   *
+   * @param messages number of messages written
+   * @param bytes number of bytes written
+   * @param nanos time spent writing, including writing the output
+   */
+  void catalogWritten(int messages, long bytes, long nanos);
+}
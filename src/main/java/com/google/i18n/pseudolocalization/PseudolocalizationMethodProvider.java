@@ -0,0 +1,42 @@
+/*
+ * Copyright 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.i18n.pseudolocalization;
+
+/**
+ * Provides a {@link PseudolocalizationMethod} which is not part of this
+ * library.  Providers are found with {@link java.util.ServiceLoader} when
+ * {@link PseudolocalizationPipeline} is initialized, through the class loader
+ * of this library, or by
+ * {@link PseudolocalizationPipeline#registerMethodProviders}.  They must be
+ * listed in
+ * {@code META-INF/services/com.google.i18n.pseudolocalization.PseudolocalizationMethodProvider}
+ * and have a public no-args constructor.
+ * <p>
+ * A provided method cannot replace a method which is already registered, such
+ * as a built-in one; the provider is skipped with a warning instead.
+ */
+public interface PseudolocalizationMethodProvider {
+
+  /**
+   * @return the name the method is registered under, as used in method lists
+   */
+  String getMethodName();
+
+  /**
+   * @return the factory creating instances of the method
+   */
+  PseudolocalizationMethodFactory getMethodFactory();
+}
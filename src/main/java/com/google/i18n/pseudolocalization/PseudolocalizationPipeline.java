@@ -15,6 +15,9 @@
  */
 package com.google.i18n.pseudolocalization;
 
+import com.google.common.base.Objects;
+import com.google.common.base.Throwables;
+import com.google.i18n.pseudolocalization.jfr.LocalizeEvent;
 import com.strava.i18n.pseudolocalization.methods.PigLatin;
 import com.google.i18n.pseudolocalization.message.Message;
 import com.google.i18n.pseudolocalization.message.SimpleMessage;
@@ -24,29 +27,53 @@ import com.google.i18n.pseudolocalization.methods.Expander;
 import com.google.i18n.pseudolocalization.methods.FakeBidi;
 import com.google.i18n.pseudolocalization.methods.HtmlPreserver;
 
-import java.lang.reflect.Constructor;
-import java.lang.reflect.InvocationTargetException;
+import java.lang.invoke.MethodHandle;
+import java.lang.ref.WeakReference;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 /**
  * A pipeline for applying zero or more pseudolocalization methods to a message.
  */
 public class PseudolocalizationPipeline {
 
+  /**
+   * Number of messages each method is applied to before moving on to the
+   * next method in {@link #localizeAll(List)}.
+   */
+  static final int BLOCK_SIZE = 64;
+
+  /**
+   * Number of consecutive messages localized by a single task in
+   * {@link #localizeAll(List, ExecutorService)}.
+   */
+  static final int PARALLEL_BLOCK_SIZE = 256;
+
   /**
    * Localize a structured message, mutating it as necessary.
    *
    * @param message message to localize
    */
   public void localize(Message message) {
-    for (PseudolocalizationMethod method : pipeline) {
+    for (PseudolocalizationMethod method : getMethods()) {
       message.accept(method);
     }
   }
@@ -64,76 +91,351 @@ public class PseudolocalizationPipeline {
   }
 
   /**
-   * A factory that creates {@link PseudolocalizationMethod} instances via
-   * reflection.
+   * Localize a batch of structured messages, mutating them as necessary.
+   * <p>
+   * Messages are processed in blocks of {@value #BLOCK_SIZE}, applying each
+   * method to the whole block before moving on to the next method, so that a
+   * method's code and tables stay hot across the block.  The result is the
+   * same as calling {@link #localize(Message)} on each message in turn.
+   * Each call is recorded as a {@link LocalizeEvent} if it is enabled.
+   *
+   * @param messages messages to localize
+   */
+  public void localizeAll(List<? extends Message> messages) {
+    LocalizeEvent event = beginLocalize();
+    int size = messages.size();
+    for (int start = 0; start < size; start += BLOCK_SIZE) {
+      localizeBlock(messages.subList(start, Math.min(start + BLOCK_SIZE, size)));
+    }
+    commit(event, size);
+  }
+
+  /**
+   * Localize a batch of structured messages, mutating them as necessary.
+   * Messages are only buffered a block at a time, so this may be used while
+   * streaming messages from a catalog.
+   *
+   * @param messages messages to localize
+   * @see #localizeAll(List)
+   */
+  public void localizeAll(Iterable<? extends Message> messages) {
+    if (messages instanceof List) {
+      localizeAll((List<? extends Message>) messages);
+      return;
+    }
+    LocalizeEvent event = beginLocalize();
+    int size = 0;
+    List<Message> block = new ArrayList<Message>(BLOCK_SIZE);
+    for (Message message : messages) {
+      size++;
+      block.add(message);
+      if (block.size() == BLOCK_SIZE) {
+        localizeBlock(block);
+        block.clear();
+      }
+    }
+    if (!block.isEmpty()) {
+      localizeBlock(block);
+    }
+    commit(event, size);
+  }
+
+  /**
+   * Begin a {@link LocalizeEvent}, unless it is disabled.
+   *
+   * @return the event, or null if it is not recorded
+   */
+  private static LocalizeEvent beginLocalize() {
+    if (!LocalizeEvent.isRecorded()) {
+      return null;
+    }
+    LocalizeEvent event = new LocalizeEvent();
+    event.begin();
+    return event;
+  }
+
+  /**
+   * Record a {@link LocalizeEvent} begun by {@link #beginLocalize()}.
+   *
+   * @param event the event, or null if it is not recorded
+   * @param messages
+   */
+  private void commit(LocalizeEvent event, int messages) {
+    if (event == null) {
+      return;
+    }
+    event.end();
+    if (event.shouldCommit()) {
+      event.methods = getMethodNames(getMethods());
+      event.messages = messages;
+      event.commit();
+    }
+  }
+
+  /**
+   * @param methods
+   * @return the class names of the methods, separated by commas, as recorded
+   *     in Flight Recorder events
+   */
+  static String getMethodNames(List<PseudolocalizationMethod> methods) {
+    StringBuilder names = new StringBuilder();
+    for (PseudolocalizationMethod method : methods) {
+      if (names.length() > 0) {
+        names.append(',');
+      }
+      names.append(method.getClass().getSimpleName());
+    }
+    return names.toString();
+  }
+
+  /**
+   * Localize a batch of structured messages in parallel, splitting them into
+   * contiguous blocks which are processed by the supplied executor.  Since
+   * each message is mutated in place, the order of the list is unaffected.
+   *
+   * @param messages messages to localize
+   * @param executor executor to run the blocks on
+   * @throws InterruptedException if interrupted while waiting for the executor
+   * @throws IllegalStateException if this pipeline is not
+   *     {@link #isThreadSafe() thread-safe}
+   */
+  public void localizeAll(List<? extends Message> messages, ExecutorService executor)
+      throws InterruptedException {
+    if (!isThreadSafe()) {
+      throw new IllegalStateException("Pipeline cannot be shared between threads");
+    }
+    List<Future<?>> futures = new ArrayList<Future<?>>();
+    int size = messages.size();
+    for (int start = 0; start < size; start += PARALLEL_BLOCK_SIZE) {
+      final List<? extends Message> block = messages.subList(start,
+          Math.min(start + PARALLEL_BLOCK_SIZE, size));
+      futures.add(executor.submit(new Runnable() {
+        public void run() {
+          localizeAll(block);
+        }
+      }));
+    }
+    try {
+      for (Future<?> future : futures) {
+        future.get();
+      }
+    } catch (ExecutionException e) {
+      Throwables.propagateIfPossible(e.getCause());
+      throw new RuntimeException(e.getCause());
+    } finally {
+      for (Future<?> future : futures) {
+        future.cancel(true);
+      }
+    }
+  }
+
+  /**
+   * Return a pipeline applying the same methods as this one, but in a single
+   * traversal of each message rather than one traversal per method.
+   * <p>
+   * The result is the same as with this pipeline, provided that methods only
+   * edit the fragment they are visiting and the message boundaries (which all
+   * built-in methods do); other edits fail with a {@link RuntimeException}.
+   *
+   * @return a compiled pipeline
+   */
+  public PseudolocalizationPipeline compile() {
+    return new FusedPipeline(this);
+  }
+
+  /**
+   * Return a pipeline applying the same methods as this one, which reports the
+   * time spent in each method and the fragments it creates and replaces, and
+   * records a {@link com.google.i18n.pseudolocalization.jfr.MethodAppliedEvent}
+   * for each method and message if it is enabled.
+   * <p>
+   * Methods are applied one at a time by the returned pipeline, even if this
+   * one was compiled.
+   *
+   * @param listener listener to report to, or null to only record events
+   * @return an instrumented pipeline
+   */
+  public PseudolocalizationPipeline instrument(PseudolocalizationListener listener) {
+    return new InstrumentedPipeline(this, listener);
+  }
+
+  /**
+   * Check if this pipeline may be used by several threads at once.
+   * <p>
+   * This is the case for all pipelines created by {@link #buildPipeline} and
+   * {@link #getVariantPipeline}: methods implementing {@link StatelessMethod}
+   * are shared, and each thread gets its own instance of the other methods.
+   * A pipeline constructed from method instances is only thread-safe if all of
+   * them are stateless.
+   *
+   * @return true if {@link #localize(Message)} may be called concurrently
+   */
+  public boolean isThreadSafe() {
+    return threadSafe;
+  }
+
+  /**
+   * Get the methods of this pipeline to be used by the current thread.
+   *
+   * @return methods in the order they should be applied
    */
-  private static class ReflectiveFactory implements PseudolocalizationMethodFactory {
+  protected final List<PseudolocalizationMethod> getMethods() {
+    return threadMethods != null ? threadMethods.get() : pipeline;
+  }
+
+  /**
+   * Localize a block of at most {@value #BLOCK_SIZE} messages, applying each
+   * method to all of them before the next one.
+   *
+   * @param block messages to localize
+   */
+  protected void localizeBlock(List<? extends Message> block) {
+    for (PseudolocalizationMethod method : getMethods()) {
+      for (Message message : block) {
+        message.accept(method);
+      }
+    }
+  }
+
+  /**
+   * A factory bound to the options a method was created with, used to create
+   * further instances of a stateful method.
+   */
+  private static class BoundFactory {
+
+    private final PseudolocalizationMethodFactory factory;
+
+    private final Map<String, String> options;
+
+    public BoundFactory(PseudolocalizationMethodFactory factory, Map<String, String> options) {
+      this.factory = factory;
+      this.options = options;
+    }
+
+    public PseudolocalizationMethod create() {
+      return factory.create(options);
+    }
+  }
+
+  /**
+   * A factory that creates {@link PseudolocalizationMethod} instances through
+   * method handles to their constructors, looked up once.
+   */
+  private static class ConstructorFactory implements PseudolocalizationMethodFactory {
+
+    private static final MethodType NO_ARGS = MethodType.methodType(PseudolocalizationMethod.class);
+
+    private static final MethodType WITH_OPTIONS = MethodType.methodType(
+        PseudolocalizationMethod.class, Map.class);
+
+    private final Class<? extends PseudolocalizationMethod> methodClass;
 
     /**
-     * A constructor taking only a {@link PseudolocalizationMethod}.
+     * The public no-args constructor.
      */
-    private final Constructor<? extends PseudolocalizationMethod> noArgsCtor;
+    private final MethodHandle noArgsCtor;
 
     /**
-     * A constructor taking a {@link PseudolocalizationMethod} and a String
-     * argument (which may be null if no arguments are supplied).  This field
-     * is null if no such constructor is provided, in which case arguments are
-     * not accepted.
+     * A public constructor taking a map of options.  This field is null if no
+     * such constructor is provided, in which case options are ignored.
      */
-    private final Constructor<? extends PseudolocalizationMethod> argsCtor;
+    private final MethodHandle argsCtor;
 
-    public ReflectiveFactory(Class<? extends PseudolocalizationMethod> methodClass) {
-      Constructor<? extends PseudolocalizationMethod> ctor = null;
-      Throwable caught = null;
+    public ConstructorFactory(Class<? extends PseudolocalizationMethod> methodClass) {
+      this.methodClass = methodClass;
+      MethodHandles.Lookup lookup = MethodHandles.publicLookup();
       try {
-        ctor = methodClass.getConstructor();
-      } catch (SecurityException e) {
-        caught = e;
+        noArgsCtor = lookup.findConstructor(methodClass,
+            MethodType.methodType(void.class)).asType(NO_ARGS);
       } catch (NoSuchMethodException e) {
-        caught = e;
-      }
-      if (caught != null) {
-        throw new RuntimeException(methodClass
-            + " must have a default constructor", caught);
+        throw new RuntimeException(methodClass + " must have a default constructor", e);
+      } catch (IllegalAccessException e) {
+        throw new RuntimeException(methodClass + " must have a default constructor", e);
       }
-      noArgsCtor = ctor;
-      ctor = null;
+      MethodHandle ctor = null;
       try {
-        ctor = methodClass.getConstructor(Map.class);
-      } catch (SecurityException e) {
-        // ignore errors
+        ctor = lookup.findConstructor(methodClass,
+            MethodType.methodType(void.class, Map.class)).asType(WITH_OPTIONS);
       } catch (NoSuchMethodException e) {
         // ignore errors
+      } catch (IllegalAccessException e) {
+        // ignore errors
       }
       argsCtor = ctor;
     }
 
     public PseudolocalizationMethod create(Map<String, String> options) {
-      Throwable caught = null;
       try {
         if (options != null && argsCtor != null) {
-          return argsCtor.newInstance(options);
+          return (PseudolocalizationMethod) argsCtor.invokeExact(options);
         } else {
-          return noArgsCtor.newInstance();
+          return (PseudolocalizationMethod) noArgsCtor.invokeExact();
         }
-      } catch (IllegalArgumentException e) {
-        caught = e;
-      } catch (InstantiationException e) {
-        caught = e;
-      } catch (IllegalAccessException e) {
-        caught = e;
-      } catch (InvocationTargetException e) {
-        caught = e;
+      } catch (Throwable t) {
+        Throwables.propagateIfPossible(t);
+        throw new RuntimeException("Unable to instantiate " + methodClass, t);
       }
-      throw new RuntimeException("Unable to instantiate " + noArgsCtor.getDeclaringClass(),
-          caught);
     }
   }
 
+  /**
+   * An immutable snapshot of the registered methods and variants, replaced as a
+   * whole on each registration so that lookups never lock.  Pipelines built
+   * for variants without options are cached in the snapshot they were built
+   * from, so that registrations also discard them.
+   */
+  private static class Registry {
+
+    final Map<String, PseudolocalizationMethodFactory> methods;
+
+    final Map<String, String[]> variants;
+
+    final ConcurrentMap<VariantKey, PseudolocalizationPipeline> variantPipelines =
+        new ConcurrentHashMap<VariantKey, PseudolocalizationPipeline>();
+
+    Registry(Map<String, PseudolocalizationMethodFactory> methods,
+        Map<String, String[]> variants) {
+      this.methods = Collections.unmodifiableMap(methods);
+      this.variants = Collections.unmodifiableMap(variants);
+    }
+  }
+
+  /**
+   * The arguments a cached variant pipeline was built with.
+   */
+  private static class VariantKey {
+
+    final String variant;
+
+    final boolean preserveHtml;
+
+    VariantKey(String variant, boolean preserveHtml) {
+      this.variant = variant;
+      this.preserveHtml = preserveHtml;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (!(obj instanceof VariantKey)) {
+        return false;
+      }
+      VariantKey other = (VariantKey) obj;
+      return variant.equals(other.variant) && preserveHtml == other.preserveHtml;
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hashCode(variant, preserveHtml);
+    }
+  }
+
+  private static final Logger logger = Logger.getLogger(
+      PseudolocalizationPipeline.class.getName());
+
   static {
-    // created here since register methods below will wind up referencing them
-    methodRegistry = new HashMap<String, PseudolocalizationMethodFactory>();
-    variantRegistry = new HashMap<String, String[]>();
+    // created here since register methods below will wind up referencing it
+    registry = new Registry(new HashMap<String, PseudolocalizationMethodFactory>(),
+        new HashMap<String, String[]>());
 
     // register known pseudolocalization methods
     Accenter.register();
@@ -143,14 +445,15 @@ public class PseudolocalizationPipeline {
     HtmlPreserver.register();
     PigLatin.register();
 
+    // register methods provided on the classpath of this library
+    registerMethodProviders(PseudolocalizationMethodProvider.class.getClassLoader());
+
     // register known pseudolocalization variants
     registerVariant("psaccent", new String[]{"accents", "expand", "brackets"});
     registerVariant("psbidi", new String[] { "fakebidi" });
   }
 
-  private static Map<String, PseudolocalizationMethodFactory> methodRegistry;
-
-  private static Map<String, String[]> variantRegistry;
+  private static volatile Registry registry;
 
   /**
    * Create a pipeline of pseudolocalization methods, optionally preserving HTML
@@ -166,15 +469,36 @@ public class PseudolocalizationPipeline {
    */
   public static PseudolocalizationPipeline buildPipeline(Map<String, String> options,
       boolean preserveHtml, List<String> methodsWithArgs) {
+    return buildPipeline(registry.methods, options, preserveHtml, methodsWithArgs);
+  }
+
+  /**
+   * Create a pipeline of pseudolocalization methods from a given set of
+   * registered methods.
+   *
+   * @param methods registered method factories, by name
+   * @param options
+   * @param preserveHtml
+   * @param methodsWithArgs
+   * @return the top of the method chain
+   * @throws RuntimeException if the creation of any of these methods failed
+   */
+  private static PseudolocalizationPipeline buildPipeline(
+      Map<String, PseudolocalizationMethodFactory> methods, Map<String, String> options,
+      boolean preserveHtml, List<String> methodsWithArgs) {
     List<PseudolocalizationMethod> chain = new ArrayList<PseudolocalizationMethod>();
+    List<BoundFactory> factories = new ArrayList<BoundFactory>();
     if (preserveHtml) {
       chain.add(new HtmlPreserver());
+      factories.add(null);
     }
     for (String methodWithArgs : methodsWithArgs) {
-      PseudolocalizationMethod method = createMethod(options, methodWithArgs);
+      BoundFactory factory = bindMethod(methods, options, methodWithArgs);
+      PseudolocalizationMethod method = factory.create();
       chain.add(method);
+      factories.add(method instanceof StatelessMethod ? null : factory);
     }
-    return new PseudolocalizationPipeline(chain);
+    return new PseudolocalizationPipeline(chain, factories);
   }
 
   /**
@@ -279,6 +603,21 @@ public class PseudolocalizationPipeline {
    */
   public static PseudolocalizationMethod createMethod(Map<String, String> options,
       String methodWithArgs) {
+    return bindMethod(registry.methods, options, methodWithArgs).create();
+  }
+
+  /**
+   * Look up the factory for the requested method and the options to create it
+   * with.
+   *
+   * @param methods registered method factories, by name
+   * @param options
+   * @param methodWithArgs
+   * @return a {@link BoundFactory} instance, never null
+   * @throws RuntimeException if the method is unknown
+   */
+  private static BoundFactory bindMethod(Map<String, PseudolocalizationMethodFactory> methods,
+      Map<String, String> options, String methodWithArgs) {
     int colon = methodWithArgs.indexOf(':');
     String args = null;
     String methodName = methodWithArgs;
@@ -300,11 +639,11 @@ public class PseudolocalizationPipeline {
         options.put(methodName + ":" + key, value);
       }
     }
-    PseudolocalizationMethodFactory factory = getMethodFactory(methodName);
+    PseudolocalizationMethodFactory factory = methods.get(methodName);
     if (factory == null) {
       throw new RuntimeException("Unknown method '" + methodName + "'");
     }
-    return factory.create(options);
+    return new BoundFactory(factory, options);
   }
 
   /**
@@ -315,8 +654,8 @@ public class PseudolocalizationPipeline {
    * @return {@link PseudolocalizationMethodFactory} instance or null if not
    *     found
    */
-  public static synchronized PseudolocalizationMethodFactory getMethodFactory(String methodName) {
-    return methodRegistry.get(methodName);
+  public static PseudolocalizationMethodFactory getMethodFactory(String methodName) {
+    return registry.methods.get(methodName);
   }
 
   /**
@@ -324,8 +663,8 @@ public class PseudolocalizationPipeline {
    * 
    * @return unmodifiable set of method names
    */
-  public static synchronized Set<String> getRegisteredMethods() {
-    return Collections.unmodifiableSet(methodRegistry.keySet());
+  public static Set<String> getRegisteredMethods() {
+    return registry.methods.keySet();
   }
 
   /**
@@ -333,8 +672,8 @@ public class PseudolocalizationPipeline {
    * 
    * @return unmodifiable set of variant tags
    */
-  public static synchronized Set<String> getRegisteredVariants() {
-    return Collections.unmodifiableSet(variantRegistry.keySet());
+  public static Set<String> getRegisteredVariants() {
+    return registry.variants.keySet();
   }
 
   /**
@@ -348,7 +687,7 @@ public class PseudolocalizationPipeline {
    *     is not registered
    * @throws RuntimeException if building the registered pipeline failed
    */
-  public static synchronized PseudolocalizationPipeline getVariantPipeline(boolean preserveHtml,
+  public static PseudolocalizationPipeline getVariantPipeline(boolean preserveHtml,
       String variant) {
     return getVariantPipeline(null, preserveHtml, variant);
   }
@@ -356,7 +695,11 @@ public class PseudolocalizationPipeline {
   /**
    * Return a pipeline associated with a given BCP47 variant tag, which
    * optionally preserves HTML tags and their attributes.
-   * 
+   *
+   * <p>The pipeline is compiled.  Without options, it is shared by all callers
+   * asking for the same variant, until methods or variants are registered
+   * again; with options, a new pipeline is built on each call.
+   *
    * @param preserveHtml true if the message should be parsed as HTML and
    *     preserve the HTML if present; note that false positives are possible
    * @param variant BCP47 variant tag (case insensitive)
@@ -364,17 +707,33 @@ public class PseudolocalizationPipeline {
    *     is not registered
    * @throws RuntimeException if building the registered pipeline failed
    */
-  public static synchronized PseudolocalizationPipeline getVariantPipeline(
+  public static PseudolocalizationPipeline getVariantPipeline(
       Map<String, String> options, boolean preserveHtml, String variant) {
+    Registry snapshot = registry;
     variant = variant.toLowerCase(Locale.ENGLISH);
-    String[] pipeline = variantRegistry.get(variant);
-    if (pipeline == null && variant.startsWith("x-")) {
-      pipeline = variantRegistry.get(variant.substring(2));
+    String[] methods = snapshot.variants.get(variant);
+    if (methods == null && variant.startsWith("x-")) {
+      variant = variant.substring(2);
+      methods = snapshot.variants.get(variant);
     }
-    if (pipeline == null) {
+    if (methods == null) {
       return null;
     }
-    return buildPipeline(options, preserveHtml, pipeline);
+    if (options != null) {
+      return buildPipeline(snapshot.methods, options, preserveHtml, Arrays.asList(methods))
+          .compile();
+    }
+    VariantKey key = new VariantKey(variant, preserveHtml);
+    PseudolocalizationPipeline pipeline = snapshot.variantPipelines.get(key);
+    if (pipeline == null) {
+      pipeline = buildPipeline(snapshot.methods, null, preserveHtml, Arrays.asList(methods))
+          .compile();
+      PseudolocalizationPipeline existing = snapshot.variantPipelines.putIfAbsent(key, pipeline);
+      if (existing != null) {
+        pipeline = existing;
+      }
+    }
+    return pipeline;
   }
 
   /**
@@ -386,7 +745,7 @@ public class PseudolocalizationPipeline {
    *    is not registered
    * @throws RuntimeException if building the registered pipeline failed
    */
-  public static synchronized PseudolocalizationPipeline getVariantPipeline(String variant) {
+  public static PseudolocalizationPipeline getVariantPipeline(String variant) {
     return getVariantPipeline(null, true, variant);
   }
 
@@ -402,23 +761,23 @@ public class PseudolocalizationPipeline {
    *    is not registered
    * @throws RuntimeException if building the registered pipeline failed
    */
-  public static synchronized PseudolocalizationPipeline getVariantPipeline(
+  public static PseudolocalizationPipeline getVariantPipeline(
       Map<String, String> options, String variant) {
     return getVariantPipeline(options, true, variant);
   }
 
   /**
    * Register a {@link PseudolocalizationMethod} that will be created by
-   * reflectively invoking a constructor taking a
-   * {@link PseudolocalizationMethod} instance to chain to, and if it supports
-   * receiving arguments it must have a constructor that also takes a String.
+   * invoking its public no-args constructor, or if options are given and it
+   * supports receiving them, its public constructor taking a {@link Map} of
+   * options.  The constructors are looked up once, when registering.
    * 
    * @param methodName
    * @param methodClass
    */
   public static void registerMethodClass(String methodName,
       Class<? extends PseudolocalizationMethod> methodClass) {
-    registerMethodFactory(methodName, new ReflectiveFactory(methodClass));
+    registerMethodFactory(methodName, new ConstructorFactory(methodClass));
   }
 
   /**
@@ -429,7 +788,69 @@ public class PseudolocalizationPipeline {
    */
   public static synchronized void registerMethodFactory(String methodName,
       PseudolocalizationMethodFactory factory) {
-    methodRegistry.put(methodName, factory);
+    Map<String, PseudolocalizationMethodFactory> methods =
+        new HashMap<String, PseudolocalizationMethodFactory>(registry.methods);
+    methods.put(methodName, factory);
+    registry = new Registry(methods, registry.variants);
+  }
+
+  /**
+   * Register the methods of the {@link PseudolocalizationMethodProvider}s
+   * listed in {@code META-INF/services} by a class loader.  Those on the
+   * classpath of this library are registered when this class is initialized.
+   * <p>
+   * Providers which fail to load, or whose method name is already registered,
+   * are skipped with a warning.
+   *
+   * @param loader class loader to look up providers with
+   */
+  public static void registerMethodProviders(ClassLoader loader) {
+    Iterator<PseudolocalizationMethodProvider> providers = ServiceLoader.load(
+        PseudolocalizationMethodProvider.class, loader).iterator();
+    while (true) {
+      PseudolocalizationMethodProvider provider;
+      String methodName;
+      PseudolocalizationMethodFactory factory;
+      try {
+        if (!providers.hasNext()) {
+          return;
+        }
+        provider = providers.next();
+      } catch (ServiceConfigurationError e) {
+        logger.log(Level.WARNING, "Skipping pseudolocalization method provider", e);
+        continue;
+      }
+      try {
+        methodName = provider.getMethodName();
+        factory = provider.getMethodFactory();
+      } catch (RuntimeException e) {
+        logger.log(Level.WARNING, "Skipping " + provider.getClass().getName(), e);
+        continue;
+      }
+      if (methodName == null || factory == null) {
+        logger.warning("Skipping " + provider.getClass().getName()
+            + ", which provides no method");
+      } else if (!registerProvidedMethod(methodName, factory)) {
+        logger.warning("Skipping " + provider.getClass().getName() + ", as method '"
+            + methodName + "' is already registered");
+      }
+    }
+  }
+
+  /**
+   * Register a provided method unless its name is already taken.
+   *
+   * @param methodName
+   * @param factory
+   * @return true if the method was registered
+   */
+  private static synchronized boolean registerProvidedMethod(String methodName,
+      PseudolocalizationMethodFactory factory) {
+    if (registry.methods.containsKey(methodName)) {
+      return false;
+    }
+    registerMethodFactory(methodName, factory);
+    return true;
   }
 
   /**
@@ -440,7 +861,9 @@ public class PseudolocalizationPipeline {
    *     to pass to {@link #buildPipeline(Map,String[])}
    */
   public static synchronized void registerVariant(String variant, String... pipeline) {
-    variantRegistry.put(variant.toLowerCase(Locale.ENGLISH), pipeline);
+    Map<String, String[]> variants = new HashMap<String, String[]>(registry.variants);
+    variants.put(variant.toLowerCase(Locale.ENGLISH), pipeline.clone());
+    registry = new Registry(registry.methods, variants);
   }
 
   /**
@@ -460,10 +883,74 @@ public class PseudolocalizationPipeline {
     return "psbidi".equalsIgnoreCase(variant);
   }
 
+  /**
+   * The methods of this pipeline, as used by the thread which created it while
+   * it is alive.
+   */
   private final List<PseudolocalizationMethod> pipeline;
 
+  /**
+   * The methods used by other threads, or null if {@link #pipeline} is shared
+   * by all threads.
+   */
+  private final ThreadLocal<List<PseudolocalizationMethod>> threadMethods;
+
+  private final boolean threadSafe;
+
   // @VisibleForTesting
   protected PseudolocalizationPipeline(List<PseudolocalizationMethod> pipeline) {
+    this(pipeline, Collections.<BoundFactory>nCopies(pipeline.size(), null));
+  }
+
+  /**
+   * Create a pipeline which applies the same methods as another one.
+   *
+   * @param other
+   */
+  protected PseudolocalizationPipeline(PseudolocalizationPipeline other) {
+    pipeline = other.pipeline;
+    threadMethods = other.threadMethods;
+    threadSafe = other.threadSafe;
+  }
+
+  /**
+   * @param pipeline methods to apply
+   * @param factories for each method, a factory to create an instance for
+   *     each further thread, or null if the method instance is shared
+   */
+  private PseudolocalizationPipeline(final List<PseudolocalizationMethod> pipeline,
+      final List<BoundFactory> factories) {
     this.pipeline = pipeline;
+    boolean isShared = true;
+    boolean isThreadSafe = true;
+    for (int i = 0; i < pipeline.size(); i++) {
+      if (factories.get(i) != null) {
+        isShared = false;
+      } else if (!(pipeline.get(i) instanceof StatelessMethod)) {
+        isThreadSafe = false;
+      }
+    }
+    threadSafe = isThreadSafe;
+    if (isShared) {
+      threadMethods = null;
+      return;
+    }
+    // weakly referenced, so that long-lived pipelines do not keep the thread
+    final WeakReference<Thread> owner = new WeakReference<Thread>(Thread.currentThread());
+    threadMethods = new ThreadLocal<List<PseudolocalizationMethod>>() {
+      @Override
+      protected List<PseudolocalizationMethod> initialValue() {
+        if (Thread.currentThread() == owner.get()) {
+          return pipeline;
+        }
+        List<PseudolocalizationMethod> methods =
+            new ArrayList<PseudolocalizationMethod>(pipeline.size());
+        for (int i = 0; i < pipeline.size(); i++) {
+          BoundFactory factory = factories.get(i);
+          methods.add(factory != null ? factory.create() : pipeline.get(i));
+        }
+        return methods;
+      }
+    };
   }
 }
@@ -0,0 +1,30 @@
+/*
+ * Copyright 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.i18n.pseudolocalization;
+
+/**
+ * A {@link PseudolocalizationMethod} which keeps no mutable state, so that a
+ * single instance may localize any number of messages concurrently.
+ * <p>
+ * Methods which do not implement this interface are assumed to keep state
+ * across the visit of a message (such as counters reset in
+ * {@code visitMessage}), and a pipeline which may be used by several threads
+ * gives each thread its own instance of them.
+ *
+ * @see PseudolocalizationPipeline#isThreadSafe()
+ */
+public interface StatelessMethod extends PseudolocalizationMethod {
+}
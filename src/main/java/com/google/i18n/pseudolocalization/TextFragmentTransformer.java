@@ -0,0 +1,39 @@
+/*
+ * Copyright 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.i18n.pseudolocalization;
+
+/**
+ * A {@link PseudolocalizationMethod} which rewrites the text of each
+ * {@link com.google.i18n.pseudolocalization.message.TextFragment TextFragment}
+ * on its own, replacing it with exactly one new text fragment and leaving the
+ * rest of the message alone.
+ * <p>
+ * A compiled pipeline (see {@link PseudolocalizationPipeline#compile()}) calls
+ * {@link #transform(String)} directly rather than visiting the message, and
+ * chains consecutive transformers on the same fragment without creating any
+ * intermediate fragments.  Implementations must therefore not depend on
+ * {@code visitMessage} or {@code endMessage} being called for every message.
+ */
+public interface TextFragmentTransformer extends PseudolocalizationMethod {
+
+  /**
+   * Transform the text of a single text fragment.
+   *
+   * @param text localizable text
+   * @return replacement text, never null
+   */
+  String transform(String text);
+}
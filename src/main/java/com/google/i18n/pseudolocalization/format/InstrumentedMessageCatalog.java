@@ -0,0 +1,203 @@
+/*
+ * Copyright 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.i18n.pseudolocalization.format;
+
+import com.google.common.io.CountingInputStream;
+import com.google.common.io.CountingOutputStream;
+import com.google.i18n.pseudolocalization.PseudolocalizationListener;
+import com.google.i18n.pseudolocalization.jfr.CatalogReadEvent;
+import com.google.i18n.pseudolocalization.jfr.CatalogWriteEvent;
+import com.google.i18n.pseudolocalization.message.Message;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Iterator;
+
+/**
+ * A {@link MessageCatalog} which reports the number of messages and bytes read
+ * and written by another catalog, and the time spent doing so, to a
+ * {@link PseudolocalizationListener} when each catalog is closed.
+ * <p>
+ * Catalogs may read their input lazily, so the time spent reading includes
+ * iterating over the messages; time spent by the caller between messages is
+ * not counted.
+ * <p>
+ * Each catalog read or written is also recorded by Flight Recorder as a
+ * {@link CatalogReadEvent} or {@link CatalogWriteEvent}, spanning from opening
+ * the catalog to closing it.
+ */
+public class InstrumentedMessageCatalog implements MessageCatalog {
+
+  private final MessageCatalog catalog;
+
+  private final PseudolocalizationListener listener;
+
+  /**
+   * @param catalog catalog to measure
+   * @param listener listener to report to, or null to only record events
+   */
+  public InstrumentedMessageCatalog(MessageCatalog catalog, PseudolocalizationListener listener) {
+    this.catalog = catalog;
+    this.listener = listener;
+  }
+
+  /**
+   * Create a catalog which only records Flight Recorder events.
+   *
+   * @param catalog catalog to measure
+   */
+  public InstrumentedMessageCatalog(MessageCatalog catalog) {
+    this(catalog, null);
+  }
+
+  public ReadableMessageCatalog readFrom(InputStream istr) throws IOException {
+    CatalogReadEvent event = new CatalogReadEvent();
+    event.begin();
+    CountingInputStream counter = new CountingInputStream(istr);
+    long start = System.nanoTime();
+    ReadableMessageCatalog input = catalog.readFrom(counter);
+    return new MeasuredInput(input, event, counter, System.nanoTime() - start);
+  }
+
+  public WritableMessageCatalog writeTo(OutputStream ostr) throws IOException {
+    CatalogWriteEvent event = new CatalogWriteEvent();
+    event.begin();
+    CountingOutputStream counter = new CountingOutputStream(ostr);
+    long start = System.nanoTime();
+    WritableMessageCatalog output = catalog.writeTo(counter);
+    return new MeasuredOutput(output, event, counter, System.nanoTime() - start);
+  }
+
+  private class MeasuredInput implements ReadableMessageCatalog, Iterator<Message> {
+
+    private final ReadableMessageCatalog input;
+
+    private final CatalogReadEvent event;
+
+    private final CountingInputStream counter;
+
+    private long nanos;
+
+    private int messages;
+
+    private Iterator<Message> iterator;
+
+    MeasuredInput(ReadableMessageCatalog input, CatalogReadEvent event,
+        CountingInputStream counter, long nanos) {
+      this.input = input;
+      this.event = event;
+      this.counter = counter;
+      this.nanos = nanos;
+    }
+
+    public void close() throws IOException {
+      long start = System.nanoTime();
+      input.close();
+      nanos += System.nanoTime() - start;
+      event.end();
+      if (event.shouldCommit()) {
+        event.format = catalog.getClass().getSimpleName();
+        event.messages = messages;
+        event.bytes = counter.getCount();
+        event.commit();
+      }
+      if (listener != null) {
+        listener.catalogRead(messages, counter.getCount(), nanos);
+      }
+    }
+
+    public Iterable<Message> readMessages() throws IOException {
+      long start = System.nanoTime();
+      final Iterable<Message> iterable = input.readMessages();
+      nanos += System.nanoTime() - start;
+      return new Iterable<Message>() {
+        public Iterator<Message> iterator() {
+          iterator = iterable.iterator();
+          return MeasuredInput.this;
+        }
+      };
+    }
+
+    public boolean hasNext() {
+      long start = System.nanoTime();
+      try {
+        return iterator.hasNext();
+      } finally {
+        nanos += System.nanoTime() - start;
+      }
+    }
+
+    public Message next() {
+      long start = System.nanoTime();
+      try {
+        Message message = iterator.next();
+        messages++;
+        return message;
+      } finally {
+        nanos += System.nanoTime() - start;
+      }
+    }
+
+    public void remove() {
+      iterator.remove();
+    }
+  }
+
+  private class MeasuredOutput implements WritableMessageCatalog {
+
+    private final WritableMessageCatalog output;
+
+    private final CatalogWriteEvent event;
+
+    private final CountingOutputStream counter;
+
+    private long nanos;
+
+    private int messages;
+
+    MeasuredOutput(WritableMessageCatalog output, CatalogWriteEvent event,
+        CountingOutputStream counter, long nanos) {
+      this.output = output;
+      this.event = event;
+      this.counter = counter;
+      this.nanos = nanos;
+    }
+
+    public void close() throws IOException {
+      long start = System.nanoTime();
+      output.close();
+      nanos += System.nanoTime() - start;
+      event.end();
+      if (event.shouldCommit()) {
+        event.format = catalog.getClass().getSimpleName();
+        event.messages = messages;
+        event.bytes = counter.getCount();
+        event.commit();
+      }
+      if (listener != null) {
+        listener.catalogWritten(messages, counter.getCount(), nanos);
+      }
+    }
+
+    public void writeMessage(Message msg) throws IOException {
+      long start = System.nanoTime();
+      output.writeMessage(msg);
+      nanos += System.nanoTime() - start;
+      messages++;
+    }
+  }
+}
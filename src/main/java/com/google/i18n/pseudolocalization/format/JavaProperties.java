@@ -15,80 +15,323 @@
  */
 package com.google.i18n.pseudolocalization.format;
 
+import com.google.common.base.Charsets;
+import com.google.common.collect.AbstractIterator;
 import com.google.i18n.pseudolocalization.message.Message;
-import com.google.i18n.pseudolocalization.message.impl.IterableTransformer;
 
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.io.OutputStream;
-import java.util.Collections;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Iterator;
 import java.util.Properties;
-import java.util.regex.Pattern;
 
 public class JavaProperties implements MessageCatalog {
 
+  /**
+   * Reads entries one logical line at a time, following the syntax accepted by
+   * {@link Properties#load(InputStream)}.  Comment and blank lines preceding an
+   * entry are attached to its message; those following the last entry are
+   * attached to the last message as its trailing comment, so entries are read
+   * one ahead.
+   */
   private static class JavaPropertiesReader implements ReadableMessageCatalog {
 
-    private final InputStream stream;
-    private Properties properties;
+    private final BufferedReader reader;
+    private boolean read = false;
+
+    /**
+     * Comment lines following the last entry, once the end of the stream is
+     * reached.
+     */
+    private String trailingComment;
 
     public JavaPropertiesReader(InputStream stream) {
-      this.stream = stream;
+      this.reader = new BufferedReader(new InputStreamReader(stream, Charsets.ISO_8859_1));
+    }
+
+    public void close() throws IOException {
+      reader.close();
     }
-    
-    private void ensureProperties() throws IOException {
-      if (properties != null) {
-        return;
+
+    public Iterable<Message> readMessages() throws IOException {
+      if (read) {
+        throw new IllegalStateException("Messages can only be read once");
       }
-      properties = new Properties();
-      try {
-        properties.load(stream);
-      } finally {
-        stream.close();
+      read = true;
+      return new Iterable<Message>() {
+        public Iterator<Message> iterator() {
+          return new AbstractIterator<Message>() {
+
+            private MessageFormatMessage next;
+
+            @Override
+            protected Message computeNext() {
+              try {
+                MessageFormatMessage message = next != null ? next : readMessage();
+                if (message == null) {
+                  return endOfData();
+                }
+                next = readMessage();
+                if (next == null) {
+                  message.setTrailingComment(trailingComment);
+                }
+                return message;
+              } catch (IOException e) {
+                throw new RuntimeException(e);
+              }
+            }
+          };
+        }
+      };
+    }
+
+    /**
+     * @return the next entry, or null at the end of the stream
+     * @throws IOException
+     */
+    private MessageFormatMessage readMessage() throws IOException {
+      StringBuilder comment = null;
+      String line;
+      while ((line = reader.readLine()) != null) {
+        int start = skipWhitespace(line, 0);
+        if (start == line.length() || line.charAt(start) == '#' || line.charAt(start) == '!') {
+          if (comment == null) {
+            comment = new StringBuilder();
+          } else {
+            comment.append('\n');
+          }
+          comment.append(line);
+          continue;
+        }
+
+        StringBuilder logical = new StringBuilder();
+        logical.append(line, start, line.length());
+        while (endsWithContinuation(logical)) {
+          logical.setLength(logical.length() - 1);
+          line = reader.readLine();
+          if (line == null) {
+            break;
+          }
+          logical.append(line, skipWhitespace(line, 0), line.length());
+        }
+        return parseEntry(logical, comment == null ? null : comment.toString());
       }
+      if (comment != null) {
+        trailingComment = comment.toString();
+      }
+      return null;
     }
 
-    public void close() {
-      // do nothing
+    private static MessageFormatMessage parseEntry(CharSequence line, String comment) {
+      StringBuilder key = new StringBuilder();
+      int pos = unescape(line, 0, true, key);
+      pos = skipWhitespace(line, pos);
+      if (pos < line.length() && (line.charAt(pos) == '=' || line.charAt(pos) == ':')) {
+        pos = skipWhitespace(line, pos + 1);
+      }
+      StringBuilder value = new StringBuilder();
+      unescape(line, pos, false, value);
+      return new MessageFormatMessage(key.toString(), value.toString(), comment);
     }
 
-    public Iterable<Message> readMessages() throws IOException {
-      ensureProperties();
-      return new IterableTransformer<String, Message>(Collections.unmodifiableSet(
-          properties.stringPropertyNames())) {
-        @Override
-        protected Message transform(String val) {
-          return new MessageFormatMessage(val, properties.getProperty(val));
+    /**
+     * Unescape characters from {@code line} into {@code out}, starting at
+     * {@code pos}.
+     *
+     * @param isKey whether to stop at the first unescaped separator
+     * @return the position after the last character read
+     */
+    private static int unescape(CharSequence line, int pos, boolean isKey, StringBuilder out) {
+      int length = line.length();
+      while (pos < length) {
+        char ch = line.charAt(pos);
+        if (isKey && (ch == '=' || ch == ':' || isWhitespace(ch))) {
+          break;
         }
-      };
-    }    
+        pos++;
+        if (ch != '\\' || pos == length) {
+          out.append(ch);
+          continue;
+        }
+        ch = line.charAt(pos++);
+        switch (ch) {
+          case 't':
+            out.append('\t');
+            break;
+          case 'n':
+            out.append('\n');
+            break;
+          case 'r':
+            out.append('\r');
+            break;
+          case 'f':
+            out.append('\f');
+            break;
+          case 'u':
+            if (pos + 4 > length) {
+              throw new IllegalArgumentException("Malformed \\uXXXX encoding in " + line);
+            }
+            int codeUnit = 0;
+            for (int i = 0; i < 4; i++) {
+              int digit = Character.digit(line.charAt(pos++), 16);
+              if (digit < 0) {
+                throw new IllegalArgumentException("Malformed \\uXXXX encoding in " + line);
+              }
+              codeUnit = (codeUnit << 4) | digit;
+            }
+            out.append((char) codeUnit);
+            break;
+          default:
+            out.append(ch);
+            break;
+        }
+      }
+      return pos;
+    }
+
+    private static boolean endsWithContinuation(CharSequence line) {
+      int backslashes = 0;
+      for (int i = line.length() - 1; i >= 0 && line.charAt(i) == '\\'; i--) {
+        backslashes++;
+      }
+      return (backslashes & 1) == 1;
+    }
+
+    private static int skipWhitespace(CharSequence line, int pos) {
+      while (pos < line.length() && isWhitespace(line.charAt(pos))) {
+        pos++;
+      }
+      return pos;
+    }
+
+    private static boolean isWhitespace(char ch) {
+      return ch == ' ' || ch == '\t' || ch == '\f';
+    }
   }
 
+  /**
+   * Writes entries as they arrive, in the format read by
+   * {@link Properties#load(InputStream)}, preceded by their comment if any.
+   * The trailing comment of the last message read from a file is written when
+   * the catalog is closed.
+   */
   private static class JavaPropertiesWriter implements WritableMessageCatalog {
 
-    private final Properties properties = new Properties();
-    private final OutputStream stream;
+    private static final char[] HEX_DIGITS = "0123456789ABCDEF".toCharArray();
+
+    private final Writer writer;
+
+    private String trailingComment;
 
     JavaPropertiesWriter(OutputStream stream) {
-      this.stream = stream;
+      this.writer = new BufferedWriter(new OutputStreamWriter(stream, Charsets.ISO_8859_1));
     }
 
     public void close() throws IOException {
-      properties.store(stream, "");
+      if (trailingComment != null) {
+        writeEscaped(trailingComment, 0, Escaping.COMMENT);
+        writer.write('\n');
+      }
+      writer.flush();
     }
 
-    public void writeMessage(Message msg) {
-      properties.put(msg.getId(), ((MessageFormatMessage) msg).getText());
+    public void writeMessage(Message msg) throws IOException {
+      MessageFormatMessage message = (MessageFormatMessage) msg;
+      String comment = message.getComment();
+      if (comment != null) {
+        writeEscaped(comment, 0, Escaping.COMMENT);
+        writer.write('\n');
+      }
+      if (message.getTrailingComment() != null) {
+        trailingComment = message.getTrailingComment();
+      }
+      writeEscaped(message.getId(), 0, Escaping.KEY);
+      writer.write('=');
+      String text = message.getText();
+      int start = 0;
+      if (text.length() > 0 && text.charAt(0) == ' ') {
+        // a leading space would be skipped when reading back
+        writer.write("\\ ");
+        start = 1;
+      }
+      writeEscaped(text, start, Escaping.VALUE);
+      writer.write('\n');
     }
-  }
 
-  /**
-   * Matches {number}, {number,word}, {number,word,extra} as a quick hack for
-   * MessageFormat-style placeholders.  Note that this is an incomplete solution
-   * since it doesn't handle quoting.
-   */
-  static final Pattern MESSAGE_FORMAT_ARG = Pattern.compile(
-      "\\{((\\d+)|#|(\\w+))(,\\w+(,[^\\}]+)?)?\\}");
+    private enum Escaping {
+      KEY, VALUE, COMMENT
+    }
+
+    /**
+     * Write {@code text} from {@code start} on, copying runs of characters which
+     * need no escaping in one call.
+     */
+    private void writeEscaped(String text, int start, Escaping escaping) throws IOException {
+      int run = start;
+      for (int i = start; i < text.length(); i++) {
+        char ch = text.charAt(i);
+        if (!needsEscape(ch, escaping)) {
+          continue;
+        }
+        writer.write(text, run, i - run);
+        writeEscape(ch);
+        run = i + 1;
+      }
+      writer.write(text, run, text.length() - run);
+    }
+
+    private static boolean needsEscape(char ch, Escaping escaping) {
+      if (escaping == Escaping.COMMENT) {
+        return ch > 0xff;
+      }
+      switch (ch) {
+        case '\\':
+        case '=':
+        case ':':
+        case '#':
+        case '!':
+          return true;
+        case ' ':
+          return escaping == Escaping.KEY;
+        default:
+          return ch < 0x20 || ch >= 0x7f;
+      }
+    }
+
+    private void writeEscape(char ch) throws IOException {
+      writer.write('\\');
+      switch (ch) {
+        case '\t':
+          writer.write('t');
+          break;
+        case '\n':
+          writer.write('n');
+          break;
+        case '\r':
+          writer.write('r');
+          break;
+        case '\f':
+          writer.write('f');
+          break;
+        default:
+          if (ch < 0x20 || ch >= 0x7f) {
+            writer.write('u');
+            writer.write(HEX_DIGITS[(ch >> 12) & 0xf]);
+            writer.write(HEX_DIGITS[(ch >> 8) & 0xf]);
+            writer.write(HEX_DIGITS[(ch >> 4) & 0xf]);
+            writer.write(HEX_DIGITS[ch & 0xf]);
+          } else {
+            writer.write(ch);
+          }
+          break;
+      }
+    }
+  }
 
   public ReadableMessageCatalog readFrom(InputStream istr) {
     return new JavaPropertiesReader(istr);
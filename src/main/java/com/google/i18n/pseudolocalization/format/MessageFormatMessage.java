@@ -17,45 +17,105 @@
 package com.google.i18n.pseudolocalization.format;
 
 import com.google.common.base.Objects;
-import com.google.i18n.pseudolocalization.message.MessageFragment;
+import com.google.i18n.pseudolocalization.message.Placeholder;
 import com.google.i18n.pseudolocalization.message.SimpleMessage;
-import com.google.i18n.pseudolocalization.message.SimpleTextFragment;
+import com.google.i18n.pseudolocalization.message.impl.PlaceholderScanner;
 
 import java.text.MessageFormat;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.regex.Matcher;
 
 /**
  * A source message whose format is based upon {@link MessageFormat}.
  */
 public class MessageFormatMessage extends SimpleMessage {
 
-  private static List<MessageFragment> parseMessage(String text) {
-    List<MessageFragment> list = new ArrayList<MessageFragment>();
-    // TODO: handle quoting
-    Matcher m = JavaProperties.MESSAGE_FORMAT_ARG.matcher(text);
-    int start = 0;
-    while (m.find()) {
-      String plainText = text.substring(start, m.start());
-      start = m.end();
-      if (plainText.length() > 0) {
-        list.add(new SimpleTextFragment(plainText));
+  /**
+   * Scans {number}, {number,word}, {number,word,extra} as a quick hack for
+   * MessageFormat-style placeholders.  Note that this is an incomplete solution
+   * since it doesn't handle quoting.
+   */
+  static final PlaceholderScanner SCANNER = new PlaceholderScanner("{") {
+
+    @Override
+    protected int matchPlaceholder(String text, int start) {
+      int pos = start + 1;
+      if (charAt(text, pos, '#')) {
+        pos++;
+      } else {
+        int end = skipWord(text, pos);
+        if (end == pos) {
+          return -1;
+        }
+        pos = end;
+      }
+      if (charAt(text, pos, ',')) {
+        int end = skipWord(text, pos + 1);
+        if (end == pos + 1) {
+          return -1;
+        }
+        pos = end;
+        if (charAt(text, pos, ',')) {
+          int close = text.indexOf('}', pos + 1);
+          return close > pos + 1 ? close + 1 : -1;
+        }
+      }
+      return charAt(text, pos, '}') ? pos + 1 : -1;
+    }
+
+    private int skipWord(String text, int pos) {
+      while (pos < text.length()) {
+        char ch = text.charAt(pos);
+        if (!isLetter(ch) && !isDigit(ch) && ch != '_') {
+          break;
+        }
+        pos++;
       }
-      list.add(new MessageFormatPlaceholder(m.group()));
+      return pos;
     }
-    String plainText = text.substring(start);
-    if (plainText.length() > 0) {
-      list.add(new SimpleTextFragment(plainText));
+
+    @Override
+    protected Placeholder createPlaceholder(String text) {
+      return new MessageFormatPlaceholder(text);
     }
-    return list;
-  }
+  };
 
   private final String key;
+  private final String comment;
+  private String trailingComment;
 
   public MessageFormatMessage(String key, String text) {
-    super(parseMessage(text));
+    this(key, text, null);
+  }
+
+  /**
+   * @param key the message's key
+   * @param text
+   * @param comment comment lines preceding the message in its source file, or
+   *     null if none
+   */
+  public MessageFormatMessage(String key, String text, String comment) {
+    super(SCANNER.scan(text));
     this.key = key;
+    this.comment = comment;
+  }
+
+  /**
+   * @return the comment lines preceding this message in its source file, or
+   *     null if none
+   */
+  public String getComment() {
+    return comment;
+  }
+
+  /**
+   * @return the comment lines following this message at the end of its source
+   *     file, if it is the last one, or null if none
+   */
+  public String getTrailingComment() {
+    return trailingComment;
+  }
+
+  void setTrailingComment(String trailingComment) {
+    this.trailingComment = trailingComment;
   }
 
   @Override
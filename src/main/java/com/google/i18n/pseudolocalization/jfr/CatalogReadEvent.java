@@ -0,0 +1,56 @@
+/*
+ * Copyright 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.i18n.pseudolocalization.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight Recorder event spanning the reading of a message catalog, from
+ * opening it to closing it.
+ *
+ * @see com.google.i18n.pseudolocalization.format.InstrumentedMessageCatalog
+ */
+@Name("com.google.i18n.pseudolocalization.CatalogRead")
+@Label("Catalog Read")
+@Category("Pseudolocalization")
+@Description("Reading of a message catalog")
+public class CatalogReadEvent extends Event {
+
+  private static final EventType TYPE = EventType.getEventType(CatalogReadEvent.class);
+
+  @Label("Format")
+  public String format;
+
+  @Label("Messages")
+  public int messages;
+
+  @Label("Bytes")
+  @DataAmount
+  public long bytes;
+
+  /**
+   * @return true if a recording is in progress with this event enabled
+   */
+  public static boolean isRecorded() {
+    return TYPE.isEnabled();
+  }
+}
@@ -0,0 +1,50 @@
+/*
+ * Copyright 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.i18n.pseudolocalization.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight Recorder event spanning the localization of a batch of messages with
+ * {@link com.google.i18n.pseudolocalization.PseudolocalizationPipeline#localizeAll}.
+ */
+@Name("com.google.i18n.pseudolocalization.Localize")
+@Label("Localize Messages")
+@Category("Pseudolocalization")
+@Description("Localization of a batch of messages by a pipeline")
+public class LocalizeEvent extends Event {
+
+  private static final EventType TYPE = EventType.getEventType(LocalizeEvent.class);
+
+  @Label("Methods")
+  @Description("Methods of the pipeline, in the order they are applied")
+  public String methods;
+
+  @Label("Messages")
+  public int messages;
+
+  /**
+   * @return true if a recording is in progress with this event enabled
+   */
+  public static boolean isRecorded() {
+    return TYPE.isEnabled();
+  }
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.i18n.pseudolocalization.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight Recorder event spanning the localization of one message by a compiled
+ * pipeline, which applies all of its methods in a single traversal of the
+ * message.
+ * <p>
+ * As there is one event per message, it is disabled by default.
+ *
+ * @see com.google.i18n.pseudolocalization.PseudolocalizationPipeline#compile
+ */
+@Name("com.google.i18n.pseudolocalization.MessageLocalized")
+@Label("Message Localized")
+@Category("Pseudolocalization")
+@Description("Localization of a message by a compiled pipeline")
+@Enabled(false)
+public class MessageLocalizedEvent extends Event {
+
+  private static final EventType TYPE = EventType.getEventType(MessageLocalizedEvent.class);
+
+  @Label("Methods")
+  @Description("Methods of the pipeline, in the order they are applied")
+  public String methods;
+
+  @Label("Message")
+  @Description("Identifier of the message, if any")
+  public String message;
+
+  /**
+   * @return true if a recording is in progress with this event enabled
+   */
+  public static boolean isRecorded() {
+    return TYPE.isEnabled();
+  }
+}
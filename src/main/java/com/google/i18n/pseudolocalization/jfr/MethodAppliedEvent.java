@@ -0,0 +1,64 @@
+/*
+ * Copyright 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.i18n.pseudolocalization.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight Recorder event spanning the application of one method to one
+ * message by an instrumented pipeline.
+ * <p>
+ * As there is one event per method and message, it is disabled by default.
+ * It is not recorded by compiled pipelines, which apply all of their methods
+ * at once and record a {@link MessageLocalizedEvent} instead.
+ *
+ * @see com.google.i18n.pseudolocalization.PseudolocalizationPipeline#instrument
+ */
+@Name("com.google.i18n.pseudolocalization.MethodApplied")
+@Label("Method Applied")
+@Category("Pseudolocalization")
+@Description("Application of a pseudolocalization method to a message")
+@Enabled(false)
+public class MethodAppliedEvent extends Event {
+
+  private static final EventType TYPE = EventType.getEventType(MethodAppliedEvent.class);
+
+  @Label("Method")
+  public String method;
+
+  @Label("Message")
+  @Description("Identifier of the message, if any")
+  public String message;
+
+  @Label("Fragments Created")
+  public int fragmentsCreated;
+
+  @Label("Fragments Replaced")
+  public int fragmentsReplaced;
+
+  /**
+   * @return true if a recording is in progress with this event enabled
+   */
+  public static boolean isRecorded() {
+    return TYPE.isEnabled();
+  }
+}
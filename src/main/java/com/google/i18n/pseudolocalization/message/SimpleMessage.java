@@ -19,19 +19,92 @@ import com.google.i18n.pseudolocalization.message.impl.AbstractMessage;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * A simple implementation of {@link Message} which maintains a list of message
  * fragments and provides a context that allows mutating the fragments.  It
  * is useful for simple messages that don't support variant forms, or as a
  * base for implementing more complex message structures.
+ * <p>
+ * Fragments are kept in a doubly-linked list, and fragments of longer
+ * messages are indexed by identity, so that each edit made through the
+ * {@link VisitorContext} takes constant time.
  */
 public class SimpleMessage extends AbstractMessage {
 
+  /**
+   * Number of fragments above which an identity index of the fragments is
+   * built rather than searching the list.
+   */
+  private static final int INDEX_THRESHOLD = 8;
+
+  /**
+   * A fragment in the list.  Each node is stamped with the values of
+   * {@link #clock} when it was inserted and removed, so that visits can skip
+   * fragments which did not exist when they started.
+   */
+  private static class Node {
+
+    final MessageFragment fragment;
+
+    final long inserted;
+
+    long removed = Long.MAX_VALUE;
+
+    Node prev;
+
+    Node next;
+
+    Node(MessageFragment fragment, long inserted) {
+      this.fragment = fragment;
+      this.inserted = inserted;
+    }
+
+    boolean isLive() {
+      return removed == Long.MAX_VALUE;
+    }
+  }
+
   private final Context context = new Context();
 
-  private List<MessageFragment> fragments;
+  /**
+   * Sentinel node, whose {@code next} is the first fragment and {@code prev}
+   * the last one.
+   */
+  private final Node head = new Node(null, 0);
+
+  /**
+   * Number of live fragments.
+   */
+  private int size;
+
+  /**
+   * Incremented on every edit.
+   */
+  private long clock = 1;
+
+  /**
+   * Number of visits of the fragments in progress; while non-zero, removed
+   * nodes are left in the list so that those visits can proceed past them.
+   */
+  private int activeVisits;
+
+  private boolean hasRemovedNodes;
+
+  /**
+   * Live node of each fragment, or {@link #head} for fragment instances which
+   * appear more than once, or null if not built yet.
+   */
+  private Map<MessageFragment, Node> index;
+
+  /**
+   * Number of live nodes of each fragment instance which appears more than
+   * once, or null if there are none yet.
+   */
+  private Map<MessageFragment, Integer> copies;
 
   /**
    * A {@link VisitorContext} which can manipulate the fragments in this
@@ -48,37 +121,22 @@ public class SimpleMessage extends AbstractMessage {
     }
 
     public void insertAfter(MessageFragment reference, MessageFragment newFrag) {
-      int index = fragments.size();
-      if (reference != null) {
-        index = fragments.indexOf(reference);
-        if (index < 0) {
-          throw new RuntimeException("missing reference fragment");
-        }
-        index++;
-      }
-      fragments.add(index, newFrag);
+      Node node = reference == null ? head.prev : find(reference);
+      link(node, newFrag);
     }
 
     public void insertBefore(MessageFragment reference, MessageFragment newFrag) {
-      int index = 0;
-      if (reference != null) {
-        index = fragments.indexOf(reference);
-        if (index < 0) {
-          throw new RuntimeException("missing reference fragment");
-        }
-      }
-      fragments.add(index, newFrag);
+      Node node = reference == null ? head.next : find(reference);
+      link(node.prev, newFrag);
     }
 
     public void replaceFragment(MessageFragment fragment, List<MessageFragment> replacements) {
-      int index = fragments.indexOf(fragment);
-      if (index < 0) {
-        throw new RuntimeException("missing reference fragment");
-      }
-      fragments.remove(index);
+      Node node = find(fragment);
+      Node prev = node;
       for (MessageFragment replacement : replacements) {
-        fragments.add(index++, replacement);
+        prev = link(prev, replacement);
       }
+      unlink(node);
     }
 
     public void replaceFragment(MessageFragment fragment, MessageFragment... replacements) {
@@ -87,8 +145,9 @@ public class SimpleMessage extends AbstractMessage {
   }
 
   public SimpleMessage(String text) {
-    fragments = new ArrayList<MessageFragment>();
-    fragments.add(new SimpleTextFragment(text));
+    head.prev = head;
+    head.next = head;
+    link(head, new SimpleTextFragment(text));
   }
 
   /**
@@ -99,13 +158,22 @@ public class SimpleMessage extends AbstractMessage {
    * @param fragments
    */
   protected SimpleMessage(List<MessageFragment> fragments) {
-    this.fragments = new ArrayList<MessageFragment>();
+    head.prev = head;
+    head.next = head;
     // TODO: assert subtypes?
-    this.fragments.addAll(fragments);
+    for (MessageFragment fragment : fragments) {
+      link(head.prev, fragment);
+    }
   }
 
   @Override
   protected Iterable<MessageFragment> getFragments() {
+    List<MessageFragment> fragments = new ArrayList<MessageFragment>(size);
+    for (Node node = head.next; node != head; node = node.next) {
+      if (node.isLive()) {
+        fragments.add(node.fragment);
+      }
+    }
     return fragments;
   }
 
@@ -114,6 +182,157 @@ public class SimpleMessage extends AbstractMessage {
     return context;
   }
 
+  /**
+   * Visit the fragments which were live when the visit started, in place.
+   */
+  @Override
+  protected void visitFragments(VisitorContext ctx, MessageFragmentVisitor mfv) {
+    long start = clock++;
+    activeVisits++;
+    try {
+      for (Node node = head.next; node != head; node = node.next) {
+        if (node.inserted < start && node.removed > start) {
+          node.fragment.accept(ctx, mfv);
+        }
+      }
+    } finally {
+      if (--activeVisits == 0 && hasRemovedNodes) {
+        purge();
+      }
+    }
+  }
+
+  /**
+   * Find the live node holding a fragment.
+   *
+   * @throws RuntimeException if the fragment is not part of this message
+   */
+  private Node find(MessageFragment fragment) {
+    if (index == null && size > INDEX_THRESHOLD) {
+      buildIndex();
+    }
+    Node node = index != null ? index.get(fragment) : head;
+    if (node == head) {
+      // lookups must find the first occurrence, scan for it
+      node = scan(fragment);
+    }
+    if (node == null) {
+      throw new RuntimeException("missing reference fragment");
+    }
+    return node;
+  }
+
+  /**
+   * @return the first live node holding a fragment, or null if none
+   */
+  private Node scan(MessageFragment fragment) {
+    for (Node node = head.next; node != head; node = node.next) {
+      if (node.fragment == fragment && node.isLive()) {
+        return node;
+      }
+    }
+    return null;
+  }
+
+  private void buildIndex() {
+    index = new IdentityHashMap<MessageFragment, Node>(size * 2);
+    for (Node node = head.next; node != head; node = node.next) {
+      if (node.isLive()) {
+        addToIndex(node);
+      }
+    }
+  }
+
+  /**
+   * Add a live node to the index, counting the copies of its fragment if it
+   * already has one.
+   */
+  private void addToIndex(Node node) {
+    Node old = index.put(node.fragment, node);
+    if (old != null) {
+      index.put(node.fragment, head);
+      if (copies == null) {
+        copies = new IdentityHashMap<MessageFragment, Integer>();
+      }
+      copies.put(node.fragment, old == head ? copies.get(node.fragment) + 1 : 2);
+    }
+  }
+
+  /**
+   * Remove a node which is no longer live from the index, indexing the last
+   * remaining copy of its fragment directly again.
+   */
+  private void removeFromIndex(Node node) {
+    if (index.get(node.fragment) != head) {
+      index.remove(node.fragment);
+      return;
+    }
+    int count = copies.get(node.fragment) - 1;
+    if (count > 1) {
+      copies.put(node.fragment, count);
+    } else {
+      copies.remove(node.fragment);
+      index.put(node.fragment, scan(node.fragment));
+    }
+  }
+
+  /**
+   * @return true if a fragment is found through the index, without scanning
+   */
+  // @VisibleForTesting
+  boolean isIndexed(MessageFragment fragment) {
+    Node node = index != null ? index.get(fragment) : null;
+    return node != null && node != head;
+  }
+
+  /**
+   * Insert a fragment after the supplied node.
+   *
+   * @return the new node
+   */
+  private Node link(Node prev, MessageFragment fragment) {
+    Node node = new Node(fragment, clock++);
+    node.prev = prev;
+    node.next = prev.next;
+    prev.next.prev = node;
+    prev.next = node;
+    size++;
+    if (index != null) {
+      addToIndex(node);
+    }
+    return node;
+  }
+
+  /**
+   * Remove a live node, leaving it in the list if a visit is in progress.
+   */
+  private void unlink(Node node) {
+    node.removed = clock++;
+    size--;
+    if (index != null) {
+      removeFromIndex(node);
+    }
+    if (activeVisits > 0) {
+      hasRemovedNodes = true;
+    } else {
+      node.prev.next = node.next;
+      node.next.prev = node.prev;
+    }
+  }
+
+  /**
+   * Drop removed nodes once no visit can reach them anymore.
+   */
+  private void purge() {
+    for (Node node = head.next; node != head; node = node.next) {
+      if (!node.isLive()) {
+        node.prev.next = node.next;
+        node.next.prev = node.prev;
+      }
+    }
+    hasRemovedNodes = false;
+  }
+
   /**
    * Collect the textual representations of all fragments.
    *
@@ -34,17 +34,32 @@ public abstract class AbstractMessage implements Message {
     VisitorContext ctx = getVisitorContext();
     MessageFragmentVisitor mfv = visitor.visitMessage(ctx, this);
     if (mfv != null) {
-      List<MessageFragment> copy = new ArrayList<MessageFragment>();
-      for (MessageFragment fragment : getFragments()) {
-        copy.add(fragment);
-      }
-      for (MessageFragment fragment : copy) {
-        fragment.accept(ctx, mfv);
-      }
+      visitFragments(ctx, mfv);
     }
     visitor.endMessage(ctx, this);
   }
 
+  /**
+   * Visit the fragments of this message, as they were when the visit started:
+   * fragments added while visiting are not visited, and fragments removed
+   * while visiting still are.
+   * <p>
+   * This implementation visits a copy of {@link #getFragments()}; subclasses
+   * which can provide the same guarantee without copying may override it.
+   *
+   * @param ctx
+   * @param mfv
+   */
+  protected void visitFragments(VisitorContext ctx, MessageFragmentVisitor mfv) {
+    List<MessageFragment> copy = new ArrayList<MessageFragment>();
+    for (MessageFragment fragment : getFragments()) {
+      copy.add(fragment);
+    }
+    for (MessageFragment fragment : copy) {
+      fragment.accept(ctx, mfv);
+    }
+  }
+
   public String getId() {
     return null;
   }
@@ -0,0 +1,465 @@
+/*
+ * Copyright 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.i18n.pseudolocalization.message.impl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Splits text into HTML tags, comments, entities and the text around them in a
+ * single forward pass.  Anything which does not form well-formed markup, such
+ * as a lone {@code <} or {@code &}, is left in the text.
+ * <p>
+ * As with the HTML parser this replaces, elements which require an end tag are
+ * closed by a synthesized end tag when they are left open.
+ */
+public final class MarkupTokenizer {
+
+  /**
+   * Receives the tokens of a text, in order.
+   */
+  public abstract static class Visitor {
+
+    public void visitText(String text) {
+    }
+
+    /**
+     * Only called if entities were requested, otherwise they are part of the
+     * text.
+     */
+    public void visitEntity(String entity) {
+    }
+
+    public void visitTag(Tag tag) {
+    }
+
+    /**
+     * @param html the end tag, which may have been synthesized
+     */
+    public void visitEndTag(String html) {
+    }
+
+    public void visitComment(String html) {
+    }
+  }
+
+  /**
+   * A start tag and its attributes, as positions in the source text.  Instances
+   * are reused between calls to {@link Visitor#visitTag(Tag)}.
+   */
+  public static final class Tag {
+
+    private String source;
+    private int start;
+    private int end;
+    private String name;
+    private int attributeCount;
+
+    /**
+     * Positions of the name and value of each attribute, five entries per
+     * attribute: name start, name end, value start, value end and quote
+     * character.  Unvalued attributes have a value start of -1.
+     */
+    private int[] attributes = new int[5 * 4];
+
+    /**
+     * @return the text the tag is part of
+     */
+    public String getSource() {
+      return source;
+    }
+
+    /**
+     * @return the position of the opening {@code <} in the source
+     */
+    public int getStart() {
+      return start;
+    }
+
+    /**
+     * @return the position after the closing {@code >} in the source
+     */
+    public int getEnd() {
+      return end;
+    }
+
+    public String getName() {
+      return name;
+    }
+
+    public String toHtml() {
+      return source.substring(start, end);
+    }
+
+    public int getAttributeCount() {
+      return attributeCount;
+    }
+
+    public String getAttributeName(int i) {
+      return source.substring(attributes[5 * i], attributes[5 * i + 1]);
+    }
+
+    public boolean isValued(int i) {
+      return attributes[5 * i + 2] >= 0;
+    }
+
+    /**
+     * @return the position of the first character of the value, after its
+     *     opening quote if any
+     */
+    public int getValueStart(int i) {
+      return attributes[5 * i + 2];
+    }
+
+    /**
+     * @return the position after the last character of the value, before its
+     *     closing quote if any
+     */
+    public int getValueEnd(int i) {
+      return attributes[5 * i + 3];
+    }
+
+    /**
+     * @return the quote character around the value, or 0 if unquoted
+     */
+    public char getQuote(int i) {
+      return (char) attributes[5 * i + 4];
+    }
+
+    private void addAttribute(int nameStart, int nameEnd, int valueStart, int valueEnd,
+        char quote) {
+      int offset = 5 * attributeCount;
+      if (offset + 5 > attributes.length) {
+        attributes = Arrays.copyOf(attributes, attributes.length * 2);
+      }
+      attributes[offset] = nameStart;
+      attributes[offset + 1] = nameEnd;
+      attributes[offset + 2] = valueStart;
+      attributes[offset + 3] = valueEnd;
+      attributes[offset + 4] = quote;
+      attributeCount++;
+    }
+  }
+
+  /**
+   * Elements which are closed by a synthesized end tag if left open.
+   */
+  private static final Set<String> COMPOSITE_ELEMENTS = new HashSet<String>(Arrays.asList(
+      "a", "applet", "body", "dd", "div", "dl", "dt", "form", "frameset", "h1", "h2", "h3",
+      "h4", "h5", "h6", "head", "html", "label", "li", "object", "ol", "option", "p",
+      "script", "select", "span", "style", "table", "td", "textarea", "th", "title", "tr",
+      "ul"));
+
+  /**
+   * Elements which are implicitly closed when another one of the same name
+   * starts.
+   */
+  private static final Set<String> SELF_ENDING_ELEMENTS = new HashSet<String>(Arrays.asList(
+      "dd", "dt", "li", "option", "p", "td", "th", "tr"));
+
+  /**
+   * Check whether {@code text} may contain anything which would not be passed
+   * to {@link Visitor#visitText(String)} as is.
+   *
+   * @param text
+   * @param entities whether entities are tokens of their own
+   */
+  public static boolean mayContainMarkup(String text, boolean entities) {
+    return text.indexOf('<') >= 0 || (entities && text.indexOf('&') >= 0);
+  }
+
+  /**
+   * Tokenize {@code text}.
+   *
+   * @param text
+   * @param entities whether entities are tokens of their own
+   * @param visitor
+   */
+  public static void tokenize(String text, boolean entities, Visitor visitor) {
+    if (!mayContainMarkup(text, entities)) {
+      if (text.length() > 0) {
+        visitor.visitText(text);
+      }
+      return;
+    }
+    new MarkupTokenizer(text, entities, visitor).tokenize();
+  }
+
+  private final String text;
+  private final boolean entities;
+  private final Visitor visitor;
+  private final Tag tag = new Tag();
+
+  /**
+   * Lower-case names of the composite elements currently open.
+   */
+  private final List<String> openElements = new ArrayList<String>();
+
+  /**
+   * Start of the pending text.
+   */
+  private int run = 0;
+
+  private MarkupTokenizer(String text, boolean entities, Visitor visitor) {
+    this.text = text;
+    this.entities = entities;
+    this.visitor = visitor;
+    tag.source = text;
+  }
+
+  private void tokenize() {
+    int length = text.length();
+    int pos = 0;
+    while (pos < length) {
+      char ch = text.charAt(pos);
+      int end = -1;
+      if (ch == '<') {
+        end = readMarkup(pos);
+      } else if (ch == '&' && entities) {
+        end = matchEntity(pos);
+        if (end >= 0) {
+          flushText(pos);
+          visitor.visitEntity(text.substring(pos, end));
+          run = end;
+        }
+      }
+      pos = end >= 0 ? end : pos + 1;
+    }
+    flushText(length);
+    for (int i = openElements.size() - 1; i >= 0; i--) {
+      visitor.visitEndTag("</" + openElements.get(i) + ">");
+    }
+  }
+
+  private void flushText(int end) {
+    if (end > run) {
+      visitor.visitText(text.substring(run, end));
+    }
+    run = end;
+  }
+
+  /**
+   * Read the comment, start tag or end tag at {@code start}, if any.
+   *
+   * @return the end of the markup, or -1 if there is none
+   */
+  private int readMarkup(int start) {
+    int pos = start + 1;
+    if (text.startsWith("!--", pos)) {
+      int close = text.indexOf("-->", pos + 3);
+      if (close < 0) {
+        return -1;
+      }
+      flushText(start);
+      visitor.visitComment(text.substring(start, close + 3));
+      return run = close + 3;
+    }
+    if (charAt(pos) == '/') {
+      int nameEnd = skipName(pos + 1);
+      if (nameEnd == pos + 1 || !isLetter(text.charAt(pos + 1))) {
+        return -1;
+      }
+      int close = text.indexOf('>', nameEnd);
+      if (close < 0) {
+        return -1;
+      }
+      flushText(start);
+      closeElement(text.substring(pos + 1, nameEnd).toLowerCase(Locale.ENGLISH));
+      visitor.visitEndTag(text.substring(start, close + 1));
+      return run = close + 1;
+    }
+    if (charAt(pos) == '!' || charAt(pos) == '?') {
+      pos++;
+    }
+    if (pos >= text.length() || !isLetter(text.charAt(pos))) {
+      return -1;
+    }
+    int nameEnd = skipName(pos);
+    tag.attributeCount = 0;
+    int end = readAttributes(nameEnd);
+    if (end < 0) {
+      return -1;
+    }
+    tag.start = start;
+    tag.end = end;
+    tag.name = text.substring(pos, nameEnd);
+    flushText(start);
+
+    String element = tag.name.toLowerCase(Locale.ENGLISH);
+    int last = openElements.size() - 1;
+    if (SELF_ENDING_ELEMENTS.contains(element) && last >= 0
+        && openElements.get(last).equals(element)) {
+      visitor.visitEndTag("</" + element + ">");
+      openElements.remove(last);
+    }
+    visitor.visitTag(tag);
+    if (COMPOSITE_ELEMENTS.contains(element) && text.charAt(end - 2) != '/') {
+      openElements.add(element);
+    }
+    return run = end;
+  }
+
+  /**
+   * Read attributes up to the end of a start tag.
+   *
+   * @return the position after the closing {@code >}, or -1 if the tag is not
+   *     closed
+   */
+  private int readAttributes(int pos) {
+    int length = text.length();
+    while (true) {
+      while (pos < length && Character.isWhitespace(text.charAt(pos))) {
+        pos++;
+      }
+      if (pos >= length) {
+        return -1;
+      }
+      char ch = text.charAt(pos);
+      if (ch == '>') {
+        return pos + 1;
+      }
+      if (ch == '/') {
+        pos++;
+        continue;
+      }
+      int nameStart = pos;
+      while (pos < length && !isAttributeNameEnd(text.charAt(pos))) {
+        pos++;
+      }
+      int nameEnd = pos;
+      int afterName = pos;
+      while (pos < length && Character.isWhitespace(text.charAt(pos))) {
+        pos++;
+      }
+      if (charAt(pos) != '=') {
+        tag.addAttribute(nameStart, nameEnd, -1, -1, (char) 0);
+        pos = afterName;
+        continue;
+      }
+      pos++;
+      while (pos < length && Character.isWhitespace(text.charAt(pos))) {
+        pos++;
+      }
+      if (pos >= length) {
+        return -1;
+      }
+      char quote = text.charAt(pos);
+      if (quote == '"' || quote == '\'') {
+        int close = text.indexOf(quote, pos + 1);
+        if (close < 0) {
+          return -1;
+        }
+        tag.addAttribute(nameStart, nameEnd, pos + 1, close, quote);
+        pos = close + 1;
+      } else {
+        int valueStart = pos;
+        while (pos < length && !Character.isWhitespace(text.charAt(pos))
+            && text.charAt(pos) != '>') {
+          pos++;
+        }
+        tag.addAttribute(nameStart, nameEnd, valueStart, pos, (char) 0);
+      }
+    }
+  }
+
+  /**
+   * Close the innermost open element named {@code element}, synthesizing end
+   * tags for the elements opened after it.  Nothing is closed if it is not
+   * open.
+   */
+  private void closeElement(String element) {
+    int index = openElements.lastIndexOf(element);
+    if (index < 0) {
+      return;
+    }
+    for (int i = openElements.size() - 1; i > index; i--) {
+      visitor.visitEndTag("</" + openElements.get(i) + ">");
+    }
+    openElements.subList(index, openElements.size()).clear();
+  }
+
+  /**
+   * Match an entity such as {@code &amp;}, {@code &#64;} or {@code &#x2D;}.
+   *
+   * @return the end of the entity, or -1 if there is none at {@code start}
+   */
+  private int matchEntity(int start) {
+    int pos = start + 1;
+    int length = text.length();
+    if (charAt(pos) == '#') {
+      pos++;
+      boolean hex = charAt(pos) == 'x' || charAt(pos) == 'X';
+      if (hex) {
+        pos++;
+      }
+      int digits = pos;
+      while (pos < length && (hex ? isHexDigit(text.charAt(pos)) : isDigit(text.charAt(pos)))) {
+        pos++;
+      }
+      if (pos == digits) {
+        return -1;
+      }
+    } else {
+      int name = pos;
+      while (pos < length && isWordChar(text.charAt(pos))) {
+        pos++;
+      }
+      if (pos == name) {
+        return -1;
+      }
+    }
+    return charAt(pos) == ';' ? pos + 1 : -1;
+  }
+
+  private int skipName(int pos) {
+    while (pos < text.length()) {
+      char ch = text.charAt(pos);
+      if (!isWordChar(ch) && ch != '-' && ch != ':' && ch != '.') {
+        break;
+      }
+      pos++;
+    }
+    return pos;
+  }
+
+  private char charAt(int pos) {
+    return pos < text.length() ? text.charAt(pos) : 0;
+  }
+
+  private static boolean isAttributeNameEnd(char ch) {
+    return ch == '=' || ch == '>' || ch == '/' || Character.isWhitespace(ch);
+  }
+
+  private static boolean isDigit(char ch) {
+    return ch >= '0' && ch <= '9';
+  }
+
+  private static boolean isHexDigit(char ch) {
+    return isDigit(ch) || (ch >= 'a' && ch <= 'f') || (ch >= 'A' && ch <= 'F');
+  }
+
+  private static boolean isLetter(char ch) {
+    return (ch >= 'a' && ch <= 'z') || (ch >= 'A' && ch <= 'Z');
+  }
+
+  private static boolean isWordChar(char ch) {
+    return isLetter(ch) || isDigit(ch) || ch == '_';
+  }
+}
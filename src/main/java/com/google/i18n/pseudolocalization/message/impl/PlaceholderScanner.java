@@ -0,0 +1,128 @@
+/*
+ * Copyright 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.i18n.pseudolocalization.message.impl;
+
+import com.google.i18n.pseudolocalization.message.MessageFragment;
+import com.google.i18n.pseudolocalization.message.Placeholder;
+import com.google.i18n.pseudolocalization.message.SimpleTextFragment;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Splits text into text fragments and placeholders in a single forward pass.
+ * Subclasses supply the grammar of their placeholders: the characters a
+ * placeholder may start with, which are looked up in a table, and a matcher
+ * which is only invoked at those characters.
+ */
+public abstract class PlaceholderScanner {
+
+  private final boolean[] startChars = new boolean[128];
+
+  /**
+   * @param startChars the ASCII characters a placeholder may start with
+   */
+  protected PlaceholderScanner(String startChars) {
+    for (int i = 0; i < startChars.length(); i++) {
+      this.startChars[startChars.charAt(i)] = true;
+    }
+  }
+
+  /**
+   * Match a placeholder starting at {@code start}, which holds one of the
+   * start characters.
+   *
+   * @param text
+   * @param start
+   * @return the end of the placeholder, or -1 if none starts there
+   */
+  protected abstract int matchPlaceholder(String text, int start);
+
+  /**
+   * @param text the text of a placeholder
+   * @return a placeholder for {@code text}
+   */
+  protected abstract Placeholder createPlaceholder(String text);
+
+  /**
+   * @param text
+   * @return the fragments of {@code text}
+   */
+  public List<MessageFragment> scan(String text) {
+    List<MessageFragment> list = new ArrayList<MessageFragment>();
+    scan(text, list);
+    return list;
+  }
+
+  /**
+   * Append the fragments of {@code text} to {@code list}.  Empty text
+   * fragments are omitted.
+   *
+   * @param text
+   * @param list
+   */
+  public void scan(String text, List<MessageFragment> list) {
+    int length = text.length();
+    int run = 0;
+    int pos = 0;
+    while (pos < length) {
+      char ch = text.charAt(pos);
+      if (ch >= 128 || !startChars[ch]) {
+        pos++;
+        continue;
+      }
+      int end = matchPlaceholder(text, pos);
+      if (end < 0) {
+        pos++;
+        continue;
+      }
+      if (pos > run) {
+        list.add(new SimpleTextFragment(text.substring(run, pos)));
+      }
+      list.add(createPlaceholder(text.substring(pos, end)));
+      run = pos = end;
+    }
+    if (run < length) {
+      list.add(new SimpleTextFragment(run == 0 ? text : text.substring(run)));
+    }
+  }
+
+  /**
+   * @return the position of the first character at or after {@code pos} which
+   *     is not an ASCII digit
+   */
+  protected static int skipDigits(String text, int pos) {
+    while (pos < text.length() && isDigit(text.charAt(pos))) {
+      pos++;
+    }
+    return pos;
+  }
+
+  /**
+   * @return whether {@code text} has {@code ch} at {@code pos}
+   */
+  protected static boolean charAt(String text, int pos, char ch) {
+    return pos < text.length() && text.charAt(pos) == ch;
+  }
+
+  protected static boolean isDigit(char ch) {
+    return ch >= '0' && ch <= '9';
+  }
+
+  protected static boolean isLetter(char ch) {
+    return (ch >= 'a' && ch <= 'z') || (ch >= 'A' && ch <= 'Z');
+  }
+}
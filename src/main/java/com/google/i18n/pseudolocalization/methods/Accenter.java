@@ -15,7 +15,10 @@
  */
 package com.google.i18n.pseudolocalization.methods;
 
+import com.google.i18n.pseudolocalization.PseudolocalizationMethod;
+import com.google.i18n.pseudolocalization.PseudolocalizationMethodFactory;
 import com.google.i18n.pseudolocalization.PseudolocalizationPipeline;
+import com.google.i18n.pseudolocalization.StatelessMethod;
 
 import java.util.HashMap;
 import java.util.Map;
@@ -26,13 +29,16 @@ import java.util.Map;
  * versions or similar characters. This allows detection of unlocalized strings
  * in the application, while still keeping the result readable.
  */
-public class Accenter extends CharacterSubstituter {
+public class Accenter extends CharacterSubstituter implements StatelessMethod {
 
   private static final String METHOD_NAME = "accents";
 
   private static final Map<Integer, String> LATIN_REPLACEMENTS;
   private static final Map<Integer, String> EXTENDED_REPLACEMENTS;
 
+  private static final SubstitutionTable LATIN_TABLE;
+  private static final SubstitutionTable EXTENDED_TABLE;
+
   static {
     LATIN_REPLACEMENTS = new HashMap<Integer, String>();
     LATIN_REPLACEMENTS.put((int) ' ', "\u2003");
@@ -135,10 +141,18 @@ public class Accenter extends CharacterSubstituter {
     EXTENDED_REPLACEMENTS.putAll(LATIN_REPLACEMENTS);
     // TODO(jat): choose replacements from a wider range.
     EXTENDED_REPLACEMENTS.put((int) '%', "\u0609");
+
+    LATIN_TABLE = SubstitutionTable.compile(LATIN_REPLACEMENTS);
+    EXTENDED_TABLE = SubstitutionTable.compile(EXTENDED_REPLACEMENTS);
   }
 
   public static void register() {
-    PseudolocalizationPipeline.registerMethodClass(METHOD_NAME, Accenter.class);
+    PseudolocalizationPipeline.registerMethodFactory(METHOD_NAME,
+        new PseudolocalizationMethodFactory() {
+          public PseudolocalizationMethod create(Map<String, String> options) {
+            return options == null ? new Accenter() : new Accenter(options);
+          }
+        });
   }
 
   public Accenter() {
@@ -149,12 +163,12 @@ public class Accenter extends CharacterSubstituter {
     super(chooseReplacements(options));
   }
 
-  private static Map<Integer, String> chooseReplacements(Map<String, String> options) {
+  private static SubstitutionTable chooseReplacements(Map<String, String> options) {
     if (options != null) {
       if (options.containsKey(METHOD_NAME + ":extended")) {
-        return EXTENDED_REPLACEMENTS;
+        return EXTENDED_TABLE;
       }
     }
-    return LATIN_REPLACEMENTS;
+    return LATIN_TABLE;
   }
 }
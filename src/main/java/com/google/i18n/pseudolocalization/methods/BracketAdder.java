@@ -16,13 +16,17 @@
 package com.google.i18n.pseudolocalization.methods;
 
 import com.google.i18n.pseudolocalization.PseudolocalizationMethod;
+import com.google.i18n.pseudolocalization.PseudolocalizationMethodFactory;
 import com.google.i18n.pseudolocalization.PseudolocalizationPipeline;
+import com.google.i18n.pseudolocalization.StatelessMethod;
 import com.google.i18n.pseudolocalization.message.DefaultVisitor;
 import com.google.i18n.pseudolocalization.message.Message;
 import com.google.i18n.pseudolocalization.message.MessageFragmentVisitor;
 import com.google.i18n.pseudolocalization.message.NonlocalizableTextFragment;
 import com.google.i18n.pseudolocalization.message.VisitorContext;
 
+import java.util.Map;
+
 /**
  * A {@link PseudolocalizationMethod} that adds brackets around the entire
  * message, to help identify where the application is concatenating separate
@@ -30,10 +34,15 @@ import com.google.i18n.pseudolocalization.message.VisitorContext;
  * messages when concatenated, such as rearranging the order).  Generally, this
  * should be the last method applied.
  */
-public class BracketAdder extends DefaultVisitor implements PseudolocalizationMethod {
+public class BracketAdder extends DefaultVisitor implements StatelessMethod {
 
   public static void register() {
-    PseudolocalizationPipeline.registerMethodClass("brackets", BracketAdder.class);
+    PseudolocalizationPipeline.registerMethodFactory("brackets",
+        new PseudolocalizationMethodFactory() {
+          public PseudolocalizationMethod create(Map<String, String> options) {
+            return new BracketAdder();
+          }
+        });
   }
 
   @Override
@@ -15,7 +15,7 @@
  */
 package com.google.i18n.pseudolocalization.methods;
 
-import com.google.i18n.pseudolocalization.PseudolocalizationMethod;
+import com.google.i18n.pseudolocalization.TextFragmentTransformer;
 import com.google.i18n.pseudolocalization.message.DefaultVisitor;
 import com.google.i18n.pseudolocalization.message.TextFragment;
 import com.google.i18n.pseudolocalization.message.VisitorContext;
@@ -25,11 +25,15 @@ import java.util.Map;
 /**
  * A base for pseudolocalization methods which replace particular codepoints
  * with substitutions.
+ * <p>
+ * The substitution itself keeps no state, so subclasses which add none may
+ * implement {@link com.google.i18n.pseudolocalization.StatelessMethod} to be
+ * shared between threads.
  */
 public abstract class CharacterSubstituter extends DefaultVisitor
-    implements PseudolocalizationMethod {
+    implements TextFragmentTransformer {
 
-  private final Map<Integer, String> replacements;
+  private final SubstitutionTable replacements;
 
   /**
    * Subclasses supply a replacement table to use.
@@ -37,6 +41,16 @@ public abstract class CharacterSubstituter extends DefaultVisitor
    * @param replacements map of code points to replacement strings
    */
   protected CharacterSubstituter(Map<Integer, String> replacements) {
+    this(SubstitutionTable.compile(replacements));
+  }
+
+  /**
+   * Subclasses supply a compiled replacement table to use, which may be
+   * shared by all instances.
+   *
+   * @param replacements compiled replacement table
+   */
+  protected CharacterSubstituter(SubstitutionTable replacements) {
     this.replacements = replacements;
   }
 
@@ -49,19 +63,11 @@ public abstract class CharacterSubstituter extends DefaultVisitor
    */
   @Override
   public void visitTextFragment(final VisitorContext ctx, TextFragment textFragment) {
-    String text = textFragment.getText();
-    StringBuilder buf = new StringBuilder();
-    int index = 0;
-    while (index < text.length()) {
-      int codePoint = text.codePointAt(index);
-      index += Character.charCount(codePoint);
-      String replacement = replacements.get(codePoint);
-      if (replacement != null) {
-        buf.append(replacement);
-      } else {
-        buf.appendCodePoint(codePoint);
-      }
-    }
-    ctx.replaceFragment(textFragment, ctx.createTextFragment(buf.toString()));
+    ctx.replaceFragment(textFragment, ctx.createTextFragment(transform(textFragment.getText())));
+  }
+
+  @Override
+  public String transform(String text) {
+    return replacements.apply(text);
   }
 }
@@ -16,14 +16,18 @@
 package com.google.i18n.pseudolocalization.methods;
 
 import com.google.i18n.pseudolocalization.PseudolocalizationMethod;
+import com.google.i18n.pseudolocalization.PseudolocalizationMethodFactory;
 import com.google.i18n.pseudolocalization.PseudolocalizationPipeline;
 import com.google.i18n.pseudolocalization.message.DefaultVisitor;
 import com.google.i18n.pseudolocalization.message.Message;
 import com.google.i18n.pseudolocalization.message.MessageFragmentVisitor;
-import com.google.i18n.pseudolocalization.message.NonlocalizableTextFragment;
 import com.google.i18n.pseudolocalization.message.TextFragment;
+import com.google.i18n.pseudolocalization.message.VariantForm;
+import com.google.i18n.pseudolocalization.message.VariantFragment;
+import com.google.i18n.pseudolocalization.message.VariantFragmentVisitor;
 import com.google.i18n.pseudolocalization.message.VisitorContext;
 
+import java.util.Arrays;
 import java.util.Map;
 
 /**
@@ -34,13 +38,21 @@ import java.util.Map;
  * defaulting to {@link #DEFAULT_NUM_WORDS_THRESHOLD}, it will be expanded
  * by about 50% of its initial size.  If it is above the threshold, its size
  * will be doubled (expanded by about 100%).
+ * <p>
+ * Only the longest form of a variant fragment is counted.
+ * <p>
+ * Instances count characters and words while visiting a message, so a
+ * pipeline shared between threads gives each thread its own instance.
 */
 public class Expander extends DefaultVisitor implements PseudolocalizationMethod {
-  // TODO(jat): implement a stack of counts, so you can count only the longest
-  // form of a variant message rather than all forms.
 
   public static void register() {
-    PseudolocalizationPipeline.registerMethodClass("expand", Expander.class);
+    PseudolocalizationPipeline.registerMethodFactory("expand",
+        new PseudolocalizationMethodFactory() {
+          public PseudolocalizationMethod create(Map<String, String> options) {
+            return options == null ? new Expander() : new Expander(options);
+          }
+        });
   }
 
   private static final int DEFAULT_NUM_WORDS_THRESHOLD = 3;
@@ -55,11 +67,38 @@ public class Expander extends DefaultVisitor implements PseudolocalizationMethod
     "thirtyeight", "thirtynine", "forty"
   };
 
+  /**
+   * Suffixes for each expansion length up to {@link #MAX_CACHED_EXPANSION},
+   * shared by all instances.
+   */
+  private static final String[] SUFFIXES;
+
+  private static final int MAX_CACHED_EXPANSION = 256;
+
+  static {
+    SUFFIXES = new String[MAX_CACHED_EXPANSION + 1];
+    for (int expansion = 0; expansion <= MAX_CACHED_EXPANSION; expansion++) {
+      SUFFIXES[expansion] = buildSuffix(expansion);
+    }
+  }
+
+  /**
+   * Number of ints per frame of {@link #countStack}.
+   */
+  private static final int FRAME_SIZE = 4;
+
   private final int threshold;
 
   private int charCount = 0;
   private int wordCount = 0;
 
+  /**
+   * For each variant fragment being visited, the counts before the fragment
+   * and the counts including its longest form so far.
+   */
+  private int[] countStack = new int[FRAME_SIZE * 4];
+  private int depth = 0;
+
   public Expander() {
     this(null);
   }
@@ -88,22 +127,16 @@ public class Expander extends DefaultVisitor implements PseudolocalizationMethod
       // for short strings, expand by 50% but at least 1 character
       expansion = (expansion + 1) / 2;
     }
-    StringBuilder expansionText = new StringBuilder();
-    int wordIndex = 0;
-    while (expansion > 0) {
-      String word = NUMBERS[wordIndex++ % NUMBERS.length];
-      expansionText.append(' ').append(word);
-      expansion -= word.length() + 1;
-    }
-    NonlocalizableTextFragment suffix = ctx.createNonlocalizableTextFragment(
-        expansionText.toString());
-    ctx.insertAfter(null, suffix);
+    String suffix = expansion <= MAX_CACHED_EXPANSION ? SUFFIXES[expansion]
+        : buildSuffix(expansion);
+    ctx.insertAfter(null, ctx.createNonlocalizableTextFragment(suffix));
   }
 
   @Override
   public MessageFragmentVisitor visitMessage(VisitorContext ctx, Message message) {
     charCount = 0;
     wordCount = 0;
+    depth = 0;
     return this;
   }
 
@@ -112,7 +145,82 @@ public class Expander extends DefaultVisitor implements PseudolocalizationMethod
     String text = fragment.getText();
     charCount += text.codePointCount(0, text.length());
     if (wordCount <= threshold) {
-      wordCount += text.split(" ").length;
+      wordCount += countWords(text);
+    }
+  }
+
+  @Override
+  public VariantFragmentVisitor visitVariantFragment(VisitorContext ctx,
+      VariantFragment fragment) {
+    if (FRAME_SIZE * (depth + 1) > countStack.length) {
+      countStack = Arrays.copyOf(countStack, countStack.length * 2);
+    }
+    int frame = FRAME_SIZE * depth++;
+    countStack[frame] = charCount;
+    countStack[frame + 1] = wordCount;
+    countStack[frame + 2] = charCount;
+    countStack[frame + 3] = wordCount;
+    return this;
+  }
+
+  @Override
+  public MessageFragmentVisitor visitVariantForm(VisitorContext ctx, VariantForm form) {
+    int frame = FRAME_SIZE * (depth - 1);
+    charCount = countStack[frame];
+    wordCount = countStack[frame + 1];
+    return this;
+  }
+
+  @Override
+  public void endVariantForm(VisitorContext ctx, VariantForm form) {
+    int frame = FRAME_SIZE * (depth - 1);
+    if (charCount > countStack[frame + 2]) {
+      countStack[frame + 2] = charCount;
+      countStack[frame + 3] = wordCount;
+    }
+  }
+
+  @Override
+  public void endVariantFragment(VisitorContext ctx, VariantFragment fragment) {
+    int frame = FRAME_SIZE * --depth;
+    charCount = countStack[frame + 2];
+    wordCount = countStack[frame + 3];
+  }
+
+  /**
+   * Count words the way {@code text.split(" ").length} does, without
+   * allocating: empty words between spaces count, trailing ones do not.
+   */
+  // @VisibleForTesting
+  static int countWords(String text) {
+    int spaces = 0;
+    int trailing = 0;
+    for (int i = 0; i < text.length(); i++) {
+      if (text.charAt(i) == ' ') {
+        spaces++;
+        trailing++;
+      } else {
+        trailing = 0;
+      }
+    }
+    if (spaces == 0) {
+      return 1;
+    }
+    return trailing == text.length() ? 0 : spaces + 1 - trailing;
+  }
+
+  /**
+   * Build the suffix made of the fewest numbers at least {@code expansion}
+   * characters long.
+   */
+  private static String buildSuffix(int expansion) {
+    StringBuilder expansionText = new StringBuilder();
+    int wordIndex = 0;
+    while (expansion > 0) {
+      String word = NUMBERS[wordIndex++ % NUMBERS.length];
+      expansionText.append(' ').append(word);
+      expansion -= word.length() + 1;
     }
+    return expansionText.toString();
   }
 }
@@ -16,13 +16,15 @@
 package com.google.i18n.pseudolocalization.methods;
 
 import com.google.i18n.pseudolocalization.PseudolocalizationMethod;
+import com.google.i18n.pseudolocalization.PseudolocalizationMethodFactory;
 import com.google.i18n.pseudolocalization.PseudolocalizationPipeline;
+import com.google.i18n.pseudolocalization.StatelessMethod;
+import com.google.i18n.pseudolocalization.TextFragmentTransformer;
 import com.google.i18n.pseudolocalization.message.DefaultVisitor;
-import com.google.i18n.pseudolocalization.message.MessageFragment;
 import com.google.i18n.pseudolocalization.message.TextFragment;
 import com.google.i18n.pseudolocalization.message.VisitorContext;
 
-import java.util.Arrays;
+import java.util.Map;
 
 /**
  * Fake a bidirectional locale by wrapping words composed of characters
@@ -36,13 +38,18 @@ import java.util.Arrays;
  * @see <a href="http://www.fileformat.info/info/unicode/char/202e/index.htm">RLO character</a>
  * @see <a href="http://www.fileformat.info/info/unicode/char/202c/index.htm">PDF character</a>
  */
-public class FakeBidi extends DefaultVisitor implements PseudolocalizationMethod {
+public class FakeBidi extends DefaultVisitor implements TextFragmentTransformer, StatelessMethod {
 
   /**
    * Register this method.
    */
   public static void register() {
-    PseudolocalizationPipeline.registerMethodClass("fakebidi", FakeBidi.class);
+    PseudolocalizationPipeline.registerMethodFactory("fakebidi",
+        new PseudolocalizationMethodFactory() {
+          public PseudolocalizationMethod create(Map<String, String> options) {
+            return new FakeBidi();
+          }
+        });
   }
 
   /** Right-to-left override character. */
@@ -51,26 +58,75 @@ public class FakeBidi extends DefaultVisitor implements PseudolocalizationMethod
   /** Pop direction formatting character. */
   private static final String PDF = "\u202c";
 
+  /**
+   * One bit per character of the Basic Multilingual Plane, set if it has a
+   * strong left-to-right directionality.  Supplementary characters are looked
+   * up individually.
+   */
+  private static final long[] LEFT_TO_RIGHT = new long[(Character.MAX_VALUE + 1) / 64];
+
+  static {
+    for (int ch = 0; ch <= Character.MAX_VALUE; ch++) {
+      if (Character.getDirectionality((char) ch) == Character.DIRECTIONALITY_LEFT_TO_RIGHT) {
+        LEFT_TO_RIGHT[ch >>> 6] |= 1L << ch;
+      }
+    }
+  }
+
   @Override
   public final void visitTextFragment(VisitorContext ctx, TextFragment textFragment) {
-    String text = textFragment.getText();
-    StringBuilder output = new StringBuilder();
-    boolean wrapping = false;
-    for (int index = 0; index < text.length(); ) {
-      int codePoint = text.codePointAt(index);
-      index += Character.charCount(codePoint);
-      byte directionality = Character.getDirectionality(codePoint);
-      boolean needsWrap = (directionality == Character.DIRECTIONALITY_LEFT_TO_RIGHT);
-      if (needsWrap != wrapping) {
-        wrapping = needsWrap;
-        output.append(wrapping ? RLO : PDF);
+    ctx.replaceFragment(textFragment, ctx.createTextFragment(transform(textFragment.getText())));
+  }
+
+  @Override
+  public final String transform(String text) {
+    int length = text.length();
+    StringBuilder output = null;
+    int copied = 0;
+    int index = 0;
+    while (index < length) {
+      int runEnd = skipLeftToRight(text, index);
+      if (runEnd == index) {
+        index += isSupplementaryAt(text, index) ? 2 : 1;
+        continue;
       }
-      output.appendCodePoint(codePoint);
+      if (output == null) {
+        output = new StringBuilder(length + 16);
+      }
+      output.append(text, copied, index).append(RLO).append(text, index, runEnd).append(PDF);
+      copied = index = runEnd;
     }
-    if (wrapping) {
-      output.append(PDF);
+    if (output == null) {
+      return text;
     }
-    ctx.replaceFragment(textFragment, Arrays.<MessageFragment>asList(ctx.createTextFragment(
-        output.toString())));
+    return output.append(text, copied, length).toString();
+  }
+
+  /**
+   * @return the end of the run of left-to-right characters starting at
+   *     {@code index}, which is {@code index} if there is none
+   */
+  private static int skipLeftToRight(String text, int index) {
+    int length = text.length();
+    while (index < length) {
+      char ch = text.charAt(index);
+      if (isSupplementaryAt(text, index)) {
+        if (Character.getDirectionality(text.codePointAt(index))
+            != Character.DIRECTIONALITY_LEFT_TO_RIGHT) {
+          break;
+        }
+        index += 2;
+      } else if ((LEFT_TO_RIGHT[ch >>> 6] & (1L << ch)) != 0) {
+        index++;
+      } else {
+        break;
+      }
+    }
+    return index;
+  }
+
+  private static boolean isSupplementaryAt(String text, int index) {
+    return Character.isHighSurrogate(text.charAt(index)) && index + 1 < text.length()
+        && Character.isLowSurrogate(text.charAt(index + 1));
   }
 }
@@ -16,26 +16,21 @@
 package com.google.i18n.pseudolocalization.methods;
 
 import com.google.i18n.pseudolocalization.PseudolocalizationMethod;
+import com.google.i18n.pseudolocalization.PseudolocalizationMethodFactory;
 import com.google.i18n.pseudolocalization.PseudolocalizationPipeline;
+import com.google.i18n.pseudolocalization.StatelessMethod;
 import com.google.i18n.pseudolocalization.message.DefaultVisitor;
 import com.google.i18n.pseudolocalization.message.MessageFragment;
 import com.google.i18n.pseudolocalization.message.TextFragment;
 import com.google.i18n.pseudolocalization.message.VisitorContext;
-
-import org.htmlparser.Attribute;
-import org.htmlparser.Parser;
-import org.htmlparser.Tag;
-import org.htmlparser.Text;
-import org.htmlparser.util.ParserException;
-import org.htmlparser.visitors.NodeVisitor;
+import com.google.i18n.pseudolocalization.message.impl.MarkupTokenizer;
 
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.Set;
-import java.util.Vector;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 /**
  * A pseudolocalization method that attempts to parse HTML and leave the tags
@@ -43,14 +38,7 @@ import java.util.regex.Pattern;
  * the pseudolocalization chain. This should generally be the first method on
  * the chain.
  */
-public class HtmlPreserver extends DefaultVisitor implements PseudolocalizationMethod {
-
-  /**
-   * Regex to match HTML entities - see the
-   * <a href="http://www.w3.org/TR/html4/charset.html#entities">HTML4 spec</a>.
-   */
-  private static final Pattern ENTITY_PATTERN = Pattern.compile(
-      "&((#\\d+)|(#[xX][a-fA-F0-9]+)|(\\w+));");
+public class HtmlPreserver extends DefaultVisitor implements StatelessMethod {
 
   private static final Set<String> LOCALIZABLE_ATTRIBUTES;
 
@@ -67,104 +55,81 @@ public class HtmlPreserver extends DefaultVisitor implements PseudolocalizationM
   }
 
   public static void register() {
-    PseudolocalizationPipeline.registerMethodClass("html", HtmlPreserver.class);
+    PseudolocalizationPipeline.registerMethodFactory("html",
+        new PseudolocalizationMethodFactory() {
+          public PseudolocalizationMethod create(Map<String, String> options) {
+            return new HtmlPreserver();
+          }
+        });
   }
 
   @Override
   public void visitTextFragment(final VisitorContext ctx, TextFragment text) {
+    String source = text.getText();
+    if (!MarkupTokenizer.mayContainMarkup(source, true)) {
+      return;
+    }
     final List<MessageFragment> result = new ArrayList<MessageFragment>();
-    Parser parser = Parser.createParser(text.getText(), "UTF-8");
-    try {
-      parser.visitAllNodesWith(new NodeVisitor() {
-        @Override
-        public void visitEndTag(Tag tag) {
-          result.add(ctx.createNonlocalizableTextFragment(tag.toHtml(true)));
-        }
+    MarkupTokenizer.tokenize(source, true, new MarkupTokenizer.Visitor() {
+      @Override
+      public void visitText(String text) {
+        result.add(ctx.createTextFragment(text));
+      }
 
-        @Override
-        public void visitStringNode(Text string) {
-          String val = string.getText();
-          Matcher m = ENTITY_PATTERN.matcher(val);
-          int start = 0;
-          while (m.find()) {
-            String plainText = val.substring(start, m.start());
-            start = m.end();
-            String entity = m.group();
-            if (plainText.length() > 0) {
-              result.add(ctx.createTextFragment(plainText));
-            }
-            result.add(ctx.createNonlocalizableTextFragment(entity));
-          }
-          String plainText = val.substring(start);
-          if (plainText.length() > 0) {
-            result.add(ctx.createTextFragment(plainText));
-          }
-        }
+      @Override
+      public void visitEntity(String entity) {
+        result.add(ctx.createNonlocalizableTextFragment(entity));
+      }
+
+      @Override
+      public void visitEndTag(String html) {
+        result.add(ctx.createNonlocalizableTextFragment(html));
+      }
 
-        @Override
-        public void visitTag(Tag tag) {
-          // Convert a tag into a sequence of fragments, which always start and
-          // end with a non-localizable text fragment but may have localizable
-          // text fragments in the middle.  For example,
-          //    <input value="Submit">
-          // becomes:
-          //   [ NLTF('<input value="'), LTF('Submit'), NLTF('">') ]
-          
-          // Warning: this is derived from tag.toTagHtml, and may need to be
-          // modified if HtmlParser is updated.
-          @SuppressWarnings("unchecked")
-          Vector<Attribute> attributes = tag.getAttributesEx();
-          int n = attributes.size();
-          StringBuffer buf = new StringBuffer();
-          buf.append("<");
-          String tagName = null;
-          for (int i = 0; i < n; ++i){
-              Attribute attribute = attributes.elementAt(i);
-              if (i == 0) {
-                tagName = attribute.getName();
-              } else if (isLocalizableAttribute(tagName, attribute)) {
-                attribute.getName(buf);
-                attribute.getAssignment(buf);
-                char quote = attribute.getQuote();
-                if (quote != 0) {
-                  buf.append(quote);
-                }
-                if (buf.length() > 0) {
-                  result.add(ctx.createNonlocalizableTextFragment(buf.toString()));
-                }
-                result.add(ctx.createTextFragment(attribute.getValue()));
-                buf = new StringBuffer();
-                if (quote != 0) {
-                  buf.append(quote);
-                }
-                continue;
-              }
-              attribute.toString(buf);
+      @Override
+      public void visitComment(String html) {
+        result.add(ctx.createNonlocalizableTextFragment(html));
+      }
+
+      @Override
+      public void visitTag(MarkupTokenizer.Tag tag) {
+        // Convert a tag into a sequence of fragments, which always start and
+        // end with a non-localizable text fragment but may have localizable
+        // text fragments in the middle.  For example,
+        //    <input value="Submit">
+        // becomes:
+        //   [ NLTF('<input value="'), LTF('Submit'), NLTF('">') ]
+        String source = tag.getSource();
+        int start = tag.getStart();
+        for (int i = 0; i < tag.getAttributeCount(); ++i) {
+          if (isLocalizableAttribute(tag, i)) {
+            result.add(ctx.createNonlocalizableTextFragment(
+                source.substring(start, tag.getValueStart(i))));
+            result.add(ctx.createTextFragment(
+                source.substring(tag.getValueStart(i), tag.getValueEnd(i))));
+            start = tag.getValueEnd(i);
           }
-          buf.append(">");
-          result.add(ctx.createNonlocalizableTextFragment(buf.toString()));
         }
+        result.add(ctx.createNonlocalizableTextFragment(source.substring(start, tag.getEnd())));
+      }
 
-        /**
-         * Check if a particular attribute contains localizable content.
-         * 
-         * @param tagName
-         * @param attribute
-         * @return true if the attribute's value is localizable, false otherwise
-         */
-        private boolean isLocalizableAttribute(String tagName, Attribute attribute) {
-          if (!attribute.isValued()) {
-            return false;
-          }
-          String attrName = attribute.getName();
-          return LOCALIZABLE_ATTRIBUTES.contains(attrName)
-              || LOCALIZABLE_ATTRIBUTES.contains(tagName + "/" + attrName);
+      /**
+       * Check if a particular attribute contains localizable content.
+       *
+       * @param tag
+       * @param i index of the attribute
+       * @return true if the attribute's value is localizable, false otherwise
+       */
+      private boolean isLocalizableAttribute(MarkupTokenizer.Tag tag, int i) {
+        if (!tag.isValued(i)) {
+          return false;
         }
-      });
-      ctx.replaceFragment(text, result);
-    } catch (ParserException e) {
-      // ignore parse failures
-    }
-    // if we can't parse it, leave it unchanged
+        String attrName = tag.getAttributeName(i).toLowerCase(Locale.ENGLISH);
+        return LOCALIZABLE_ATTRIBUTES.contains(attrName)
+            || LOCALIZABLE_ATTRIBUTES.contains(
+                tag.getName().toLowerCase(Locale.ENGLISH) + "/" + attrName);
+      }
+    });
+    ctx.replaceFragment(text, result);
   }
 }
@@ -0,0 +1,176 @@
+/*
+ * Copyright 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.i18n.pseudolocalization.methods;
+
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * An immutable table of replacements for individual code points, used by
+ * {@link CharacterSubstituter}.
+ * <p>
+ * Code points below the surrogate range are looked up directly in arrays
+ * indexed by the character, so that substituting BMP text neither boxes nor
+ * hashes anything.  Other code points (including supplementary ones) are
+ * kept in a sorted array and found by binary search.
+ */
+public final class SubstitutionTable {
+
+  /**
+   * Replacement for each BMP character below {@link #denseLimit}, or null.
+   */
+  private final String[] denseStrings;
+
+  /**
+   * The replacement for each character in {@link #denseStrings} if it is a
+   * single non-NUL character, 0 otherwise.
+   */
+  private final char[] denseChars;
+
+  private final int denseLimit;
+
+  /**
+   * Sorted code points at or above {@link #denseLimit} with a replacement.
+   */
+  private final int[] sparseCodePoints;
+
+  private final String[] sparseStrings;
+
+  /**
+   * Compile a table from a map of code points to replacement strings.
+   *
+   * @param replacements map of code points to replacement strings
+   * @return compiled table
+   */
+  public static SubstitutionTable compile(Map<Integer, String> replacements) {
+    int limit = 0;
+    int sparseCount = 0;
+    for (int codePoint : replacements.keySet()) {
+      if (codePoint < Character.MIN_SURROGATE) {
+        limit = Math.max(limit, codePoint + 1);
+      } else {
+        sparseCount++;
+      }
+    }
+    String[] denseStrings = new String[limit];
+    char[] denseChars = new char[limit];
+    int[] sparseCodePoints = new int[sparseCount];
+    int sparseIndex = 0;
+    for (Map.Entry<Integer, String> entry : replacements.entrySet()) {
+      int codePoint = entry.getKey();
+      String replacement = entry.getValue();
+      if (replacement == null) {
+        throw new IllegalArgumentException("No replacement for U+"
+            + Integer.toHexString(codePoint));
+      }
+      if (codePoint < Character.MIN_SURROGATE) {
+        denseStrings[codePoint] = replacement;
+        if (replacement.length() == 1) {
+          denseChars[codePoint] = replacement.charAt(0);
+        }
+      } else {
+        sparseCodePoints[sparseIndex++] = codePoint;
+      }
+    }
+    Arrays.sort(sparseCodePoints);
+    String[] sparseStrings = new String[sparseCount];
+    for (int i = 0; i < sparseCount; i++) {
+      sparseStrings[i] = replacements.get(sparseCodePoints[i]);
+    }
+    return new SubstitutionTable(denseStrings, denseChars, sparseCodePoints, sparseStrings);
+  }
+
+  private SubstitutionTable(String[] denseStrings, char[] denseChars, int[] sparseCodePoints,
+      String[] sparseStrings) {
+    this.denseStrings = denseStrings;
+    this.denseChars = denseChars;
+    this.denseLimit = denseStrings.length;
+    this.sparseCodePoints = sparseCodePoints;
+    this.sparseStrings = sparseStrings;
+  }
+
+  /**
+   * Replace each code point of the supplied text which has a replacement.
+   *
+   * @param text
+   * @return the text with replacements applied, or {@code text} itself if
+   *     none of its code points has a replacement
+   */
+  public String apply(String text) {
+    int length = text.length();
+    int index = 0;
+    while (index < length && !hasReplacement(text, index)) {
+      index++;
+    }
+    if (index == length) {
+      return text;
+    }
+    StringBuilder buf = new StringBuilder(length + (length >> 1) + 1);
+    buf.append(text, 0, index);
+    while (index < length) {
+      char ch = text.charAt(index);
+      if (ch < denseLimit) {
+        char replacementChar = denseChars[ch];
+        if (replacementChar != 0) {
+          buf.append(replacementChar);
+        } else {
+          String replacement = denseStrings[ch];
+          if (replacement != null) {
+            buf.append(replacement);
+          } else {
+            buf.append(ch);
+          }
+        }
+        index++;
+      } else if (ch < Character.MIN_SURROGATE || sparseCodePoints.length == 0) {
+        buf.append(ch);
+        index++;
+      } else {
+        int codePoint = text.codePointAt(index);
+        int charCount = Character.charCount(codePoint);
+        int sparseIndex = Arrays.binarySearch(sparseCodePoints, codePoint);
+        if (sparseIndex >= 0) {
+          buf.append(sparseStrings[sparseIndex]);
+        } else {
+          buf.append(text, index, index + charCount);
+        }
+        index += charCount;
+      }
+    }
+    return buf.toString();
+  }
+
+  /**
+   * Check if the character at {@code index} starts a code point with a
+   * replacement.  Low surrogates are never reported as replaceable on their
+   * own once the preceding high surrogate has been checked.
+   */
+  private boolean hasReplacement(String text, int index) {
+    char ch = text.charAt(index);
+    if (ch < denseLimit) {
+      return denseStrings[ch] != null;
+    }
+    if (ch < Character.MIN_SURROGATE || sparseCodePoints.length == 0) {
+      return false;
+    }
+    if (Character.isLowSurrogate(ch) && index > 0
+        && Character.isHighSurrogate(text.charAt(index - 1))) {
+      // second half of a pair, already checked as a whole
+      return false;
+    }
+    return Arrays.binarySearch(sparseCodePoints, text.codePointAt(index)) >= 0;
+  }
+}
@@ -15,12 +15,17 @@
  */
 package com.google.i18n.pseudolocalization.tool;
 
+import com.google.common.base.Charsets;
 import com.google.common.base.Joiner;
+import com.google.i18n.pseudolocalization.PipelineStats;
 import com.google.i18n.pseudolocalization.PseudolocalizationPipeline;
 import com.google.i18n.pseudolocalization.format.FormatRegistry;
+import com.google.i18n.pseudolocalization.format.InstrumentedMessageCatalog;
 import com.google.i18n.pseudolocalization.format.MessageCatalog;
 import com.google.i18n.pseudolocalization.format.ReadableMessageCatalog;
 import com.google.i18n.pseudolocalization.format.WritableMessageCatalog;
+import com.google.i18n.pseudolocalization.jfr.CatalogReadEvent;
+import com.google.i18n.pseudolocalization.jfr.CatalogWriteEvent;
 import com.google.i18n.pseudolocalization.message.Message;
 
 import java.io.BufferedReader;
@@ -30,10 +35,15 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * Run a pseudolocalization pipeline on a set of input files.
@@ -50,14 +60,19 @@ public class Pseudolocalizer {
      * Print a usage message.
      */
     private static void printUsage() {
-      System.err.println("Usage: Pseudolocalizer [--ext=fqcn[,fqcn...]] [--variant=varname|"
+      System.err.println("Usage: Pseudolocalizer [--variant=varname|"
           + "--method=method[,method...] [--type=filetype] [<--interactive|files>]"
-          + "[--out=directory] [--keep_names] [--suffix=suffix]");
+          + "[--out=directory] [--keep_names] [--suffix=suffix] [--jobs=N] [--stats[=file]]");
       System.err.println("filetype: a registered file type, typically the same as the extension");
       System.err.println();
       System.err.println("If given a list of files, output is written to file_variant.ext");
       System.err.println("If a method list is used instead of a variant, the suffix is \"pseudo\"");
       System.err.println("If no variant or methods are given, psaccent is used");
+      System.err.println("Methods from PseudolocalizationMethodProvider services on the classpath "
+          + "are registered automatically");
+      System.err.println("With --jobs, messages of each file are localized by N threads");
+      System.err.println("With --stats, time spent in each method and reading and writing is "
+          + "printed for each file, and also written as JSON to the file if one is given");
     }
 
     private final List<String> fileNames;
@@ -74,6 +89,12 @@ public class Pseudolocalizer {
 
     private final String suffix;
 
+    private final int jobs;
+
+    private final boolean stats;
+
+    private final File statsFile;
+
     /**
      * Process command-line arguments.
      * 
@@ -88,6 +109,9 @@ public class Pseudolocalizer {
       String tmpSuffix = "_pseudo";
       String tmpFileType = null;
       File tmpOutputDirectory = null;
+      int tmpJobs = 1;
+      boolean tmpStats = false;
+      File tmpStatsFile = null;
       int argIndex = 0;
       while (argIndex < args.length && args[argIndex].startsWith("--")) {
         String argName = args[argIndex].substring(2);
@@ -112,8 +136,10 @@ public class Pseudolocalizer {
           for (String className : argName.substring(4).split(",")) {
             try {
               /*
-               * Just load the named class, let its static initializer do whatever
-               * registration is required.
+               * Deprecated, methods should be provided as a
+               * PseudolocalizationMethodProvider service instead. Just load the
+               * named class, let its static initializer do whatever registration
+               * is required.
                */
               Class.forName(className);
             } catch (ClassNotFoundException e) {
@@ -123,6 +149,21 @@ public class Pseudolocalizer {
           }
         } else if (argName.startsWith("type=")) {
           tmpFileType = argName.substring(5);
+        } else if (argName.startsWith("jobs=")) {
+          try {
+            tmpJobs = Integer.parseInt(argName.substring(5));
+          } catch (NumberFormatException e) {
+            tmpJobs = 0;
+          }
+          if (tmpJobs < 1) {
+            System.err.println("Invalid number of jobs: " + argName.substring(5));
+            error = true;
+          }
+        } else if (argName.equals("stats")) {
+          tmpStats = true;
+        } else if (argName.startsWith("stats=")) {
+          tmpStats = true;
+          tmpStatsFile = new File(argName.substring(6));
         } else if (argName.equals("interactive")) {
           tmpIsInteractive = true;
         } else if (argName.startsWith("out=")) {
@@ -146,6 +187,9 @@ public class Pseudolocalizer {
       variant = tmpVariant;
       isInteractive = tmpIsInteractive;
       suffix = tmpSuffix;
+      jobs = tmpJobs;
+      stats = tmpStats;
+      statsFile = tmpStatsFile;
 
       if (error || (isInteractive && argIndex < args.length)) {
         printUsage();
@@ -159,14 +203,16 @@ public class Pseudolocalizer {
       }
 
       // build pipeline
+      PseudolocalizationPipeline tmpPipeline;
       if (variant != null) {
-        pipeline = PseudolocalizationPipeline.getVariantPipeline(variant);
+        tmpPipeline = PseudolocalizationPipeline.getVariantPipeline(variant);
       } else {
-        pipeline = PseudolocalizationPipeline.buildPipeline(methods);
+        tmpPipeline = PseudolocalizationPipeline.buildPipeline(methods);
       }
-      if (pipeline == null) {
+      if (tmpPipeline == null) {
         throw new RuntimeException("Unable to construct pipeline for methods " + methods);
       }
+      pipeline = tmpPipeline.compile();
     }
 
     /**
@@ -213,6 +259,27 @@ public class Pseudolocalizer {
     public String getSuffix() {
       return suffix;
     }
+
+    /**
+     * @return the number of threads to localize messages with
+     */
+    public int getJobs() {
+      return jobs;
+    }
+
+    /**
+     * @return true if statistics should be reported for each file
+     */
+    public boolean isStats() {
+      return stats;
+    }
+
+    /**
+     * @return the file to write statistics to as JSON, or null if none
+     */
+    public File getStatsFile() {
+      return statsFile;
+    }
   }
 
   /**
@@ -233,16 +300,50 @@ public class Pseudolocalizer {
    */
   // @VisibleForTesting
   void run(PseudolocalizerArguments arguments) throws IOException {
-    List<String> fileNames = arguments.getFileNames();
     PseudolocalizationPipeline pipeline = arguments.getPipeline();
     if (arguments.isInteractive()) {
       runStdin(pipeline);
       return;
     }
+    ExecutorService executor = null;
+    if (arguments.getJobs() > 1) {
+      if (pipeline.isThreadSafe()) {
+        executor = Executors.newFixedThreadPool(arguments.getJobs());
+      } else {
+        System.err.println("Pipeline cannot be shared between threads, ignoring --jobs");
+      }
+    }
+    try {
+      run(arguments, pipeline, executor);
+    } finally {
+      if (executor != null) {
+        executor.shutdownNow();
+      }
+    }
+  }
+
+  /**
+   * @param arguments
+   * @param pipeline
+   * @param executor executor to localize messages with, or null to localize
+   *     them on the current thread
+   * @throws IOException
+   */
+  private void run(PseudolocalizerArguments arguments, PseudolocalizationPipeline pipeline,
+      ExecutorService executor) throws IOException {
+    List<String> fileNames = arguments.getFileNames();
+    List<String> statsJson = new ArrayList<String>();
     if (fileNames.size() == 0) {
       // if no files given, read from stdin / write to stdout
       MessageCatalog msgCat = FormatRegistry.getMessageCatalog(arguments.getType());
-      writeMessages(msgCat, readAndProcessMessages(pipeline, msgCat, System.in), System.out);
+      PipelineStats stats = arguments.isStats() ? new PipelineStats() : null;
+      msgCat = instrument(msgCat, stats);
+      writeMessages(msgCat, readAndProcessMessages(stats != null ? pipeline.instrument(stats)
+          : pipeline, msgCat, System.in, executor), System.out);
+      if (stats != null) {
+        reportStats("<stdin>", stats, statsJson);
+        writeStats(arguments.getStatsFile(), statsJson);
+      }
       return;
     }
 
@@ -280,13 +381,74 @@ public class Pseudolocalizer {
         fileType = extension;
       }
       MessageCatalog msgCat = FormatRegistry.getMessageCatalog(fileType);
+      PseudolocalizationPipeline filePipeline = pipeline;
+      PipelineStats stats = arguments.isStats() ? new PipelineStats() : null;
+      msgCat = instrument(msgCat, stats);
+      if (stats != null) {
+        filePipeline = pipeline.instrument(stats);
+      }
 
       // read and process messages
       InputStream inputStream = new FileInputStream(file);
-      List<Message> processedMessages = readAndProcessMessages(pipeline, msgCat, inputStream);
+      List<Message> processedMessages = readAndProcessMessages(filePipeline, msgCat,
+          inputStream, executor);
 
       OutputStream outputStream = new FileOutputStream(new File(outFileName));
       writeMessages(msgCat, processedMessages, outputStream);
+
+      if (stats != null) {
+        reportStats(fileName, stats, statsJson);
+      }
+    }
+    if (arguments.isStats()) {
+      writeStats(arguments.getStatsFile(), statsJson);
+    }
+  }
+
+  /**
+   * Measure a catalog if statistics are requested, or if its Flight Recorder
+   * events are enabled.
+   *
+   * @param msgCat
+   * @param stats statistics to report to, or null if none
+   * @return the catalog to read and write the file with
+   */
+  private MessageCatalog instrument(MessageCatalog msgCat, PipelineStats stats) {
+    if (stats != null || CatalogReadEvent.isRecorded() || CatalogWriteEvent.isRecorded()) {
+      return new InstrumentedMessageCatalog(msgCat, stats);
+    }
+    return msgCat;
+  }
+
+  /**
+   * Print the statistics of a file, and add them to the JSON report.
+   *
+   * @param fileName
+   * @param stats
+   * @param statsJson JSON objects of the files processed so far
+   */
+  private void reportStats(String fileName, PipelineStats stats, List<String> statsJson) {
+    System.err.println("Statistics for " + fileName + ":");
+    stats.printReport(System.err);
+    statsJson.add("{\"file\":" + PipelineStats.toJsonString(fileName) + ",\"stats\":"
+        + stats.toJson() + "}");
+  }
+
+  /**
+   * @param statsFile file to write the statistics of all files to as a JSON
+   *     array, or null if none
+   * @param statsJson JSON objects of the files processed
+   * @throws IOException
+   */
+  private void writeStats(File statsFile, List<String> statsJson) throws IOException {
+    if (statsFile == null) {
+      return;
+    }
+    Writer writer = new OutputStreamWriter(new FileOutputStream(statsFile), Charsets.UTF_8);
+    try {
+      writer.write("[" + Joiner.on(",\n").join(statsJson) + "]\n");
+    } finally {
+      writer.close();
     }
   }
 
@@ -294,22 +456,33 @@ public class Pseudolocalizer {
    * @param pipeline
    * @param msgCat
    * @param inputStream
-   * @return processed messages
+   * @param executor executor to localize messages with, or null to localize
+   *     them on the current thread
+   * @return processed messages, in the order they were read
    * @throws IOException
    */
   private List<Message> readAndProcessMessages(PseudolocalizationPipeline pipeline,
-      MessageCatalog msgCat, InputStream inputStream)
+      MessageCatalog msgCat, InputStream inputStream, ExecutorService executor)
       throws IOException {
     List<Message> processedMessages = new ArrayList<Message>();
     ReadableMessageCatalog input = msgCat.readFrom(inputStream);
     try {
       for (Message msg : input.readMessages()) {
-        pipeline.localize(msg);
         processedMessages.add(msg);
       }
     } finally {
       input.close();
     }
+    if (executor == null) {
+      pipeline.localizeAll(processedMessages);
+    } else {
+      try {
+        pipeline.localizeAll(processedMessages, executor);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException("Interrupted while localizing messages");
+      }
+    }
     return processedMessages;
   }
 
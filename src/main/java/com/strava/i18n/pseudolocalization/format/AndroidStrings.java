@@ -15,29 +15,41 @@
  */
 package com.strava.i18n.pseudolocalization.format;
 
-import com.google.common.base.Splitter;
-import com.google.common.collect.*;
+import com.google.common.base.Charsets;
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
 import com.google.i18n.pseudolocalization.format.MessageCatalog;
 import com.google.i18n.pseudolocalization.format.ReadableMessageCatalog;
 import com.google.i18n.pseudolocalization.format.WritableMessageCatalog;
 import com.google.i18n.pseudolocalization.message.*;
-import org.w3c.dom.*;
-import org.xml.sax.SAXException;
 
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.transform.*;
-import javax.xml.transform.dom.DOMSource;
-import javax.xml.transform.stream.StreamResult;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.util.List;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Iterator;
 import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
 
 /**
  * A message catalog capable of reading a writing Android strings.xml files.
+ * <p>
+ * Messages are written in the order they are given, so the items of a
+ * {@code string-array} or {@code plurals} resource must be written
+ * contiguously, as they are read; writing an item of a resource which was
+ * already followed by other messages fails with an {@link IOException}.
+ * Messages sorted by id are in a suitable order.  Resources are written
+ * before the catalog is closed, rather than buffered until then, so an item
+ * cannot be merged back into a resource already written.
  *
  * @author julien@strava.com (Julien Silland)
  */
@@ -45,176 +57,185 @@ public class AndroidStrings implements MessageCatalog {
 
   @Override
   public ReadableMessageCatalog readFrom(InputStream istr) throws IOException {
-    DocumentBuilder documentBuilder;
+    XMLInputFactory factory = XMLInputFactory.newInstance();
+    factory.setProperty(XMLInputFactory.IS_COALESCING, true);
+    factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+    final XMLStreamReader reader;
     try {
-      documentBuilder = DocumentBuilderFactory.newInstance().newDocumentBuilder();
-    } catch (ParserConfigurationException e) {
+      reader = factory.createXMLStreamReader(istr);
+    } catch (XMLStreamException e) {
       throw new IOException(e);
     }
 
-    Document document;
-    try {
-      document = documentBuilder.parse(istr);
-    } catch (SAXException e) {
-      throw new IOException(e);
-    }
-
-    document.getDocumentElement().normalize();
-    Element resources = document.getDocumentElement();
-
-    final ImmutableList.Builder<Message> messages = ImmutableList.builder();
-
-    NodeList strings = resources.getElementsByTagName("string");
-    for (int i = 0; i < strings.getLength(); i++) {
-      Element string = (Element) strings.item(i);
-      String stringName = string.getAttribute("name");
-      String messageValue = string.getChildNodes().getLength() == 0 ?
-          "" : string.getFirstChild().getNodeValue();
-      Message message = new FormattedMessage(
-          AndroidMessageKey.forSimpleMessage(stringName).toString(), messageValue);
-      messages.add(message);
-    }
-
-    NodeList arrays = resources.getElementsByTagName("string-array");
-    for (int i = 0; i < arrays.getLength(); i++) {
-      Element array = (Element) arrays.item(i);
-      String arrayName = array.getAttribute("name");
-      NodeList items = array.getElementsByTagName("item");
-      for (int j = 0; j < items.getLength(); j++) {
-        Element item = (Element) items.item(j);
-        if ("item".equals(item.getTagName())) {
-          AndroidMessageKey key = AndroidMessageKey.forArrayPosition(arrayName, j);
-          Message message = new FormattedMessage(key.toString(),
-              item.getFirstChild().getNodeValue());
-          messages.add(message);
-        }
-      }
-    }
+    return new ReadableMessageCatalog() {
 
-    NodeList plurals = resources.getElementsByTagName("plurals");
-    for (int i = 0; i < plurals.getLength(); i++) {
-      Element plural = (Element) plurals.item(i);
-      String pluralName = plural.getAttribute("name");
-      NodeList forms = plural.getElementsByTagName("item");
-      for (int j = 0; j < forms.getLength(); j++) {
-        Element form = (Element) forms.item(j);
-        if ("item".equals(form.getTagName())) {
-          String quantity = form.getAttribute("quantity");
-          AndroidMessageKey key = AndroidMessageKey.forPlural(pluralName,
-              AndroidMessageKey.PluralForm.of(quantity));
-          Message message = new FormattedMessage(key.toString(),
-              form.getFirstChild().getNodeValue());
-          messages.add(message);
-        }
-      }
-    }
+      private boolean read = false;
 
-    return new ReadableMessageCatalog() {
       @Override
       public void close() throws IOException {
-        // nop
+        try {
+          reader.close();
+        } catch (XMLStreamException e) {
+          throw new IOException(e);
+        }
       }
 
       @Override
       public Iterable<Message> readMessages() throws IOException {
-        return messages.build();
+        if (read) {
+          throw new IllegalStateException("Messages can only be read once");
+        }
+        read = true;
+        return new Iterable<Message>() {
+          @Override
+          public Iterator<Message> iterator() {
+            return new MessageIterator(reader);
+          }
+        };
       }
     };
   }
 
-  @Override
-  public WritableMessageCatalog writeTo(final OutputStream ostr) throws IOException {
-    return new WritableMessageCatalog() {
+  /**
+   * Lazily reads messages from the elements of a {@code strings.xml} file, in
+   * document order.
+   */
+  private static class MessageIterator extends AbstractIterator<Message> {
 
-      private final Map<String, Message> strings = Maps.newHashMap();
-      private final Multimap<String, IndexedMessage> arrays = TreeMultimap.create();
-      private final Table<String, AndroidMessageKey.PluralForm, Message> plurals =
-          HashBasedTable.create();
+    private final XMLStreamReader reader;
 
-      @Override
-      public void close() throws IOException {
-        DocumentBuilder documentBuilder;
-        try {
-          documentBuilder = DocumentBuilderFactory.newInstance()
-              .newDocumentBuilder();
-        } catch (ParserConfigurationException e) {
-          throw new IOException(e);
-        }
-
-        Document document = documentBuilder.newDocument();
-        Element resources = document.createElement("resources");
-        document.appendChild(resources);
+    /**
+     * Name of the {@code string-array} or {@code plurals} element being read,
+     * or null outside of them.
+     */
+    private String groupName;
 
-        for (Map.Entry<String, Message> string : strings.entrySet()) {
-          Element stringNode = document.createElement("string");
+    private boolean inPlurals;
 
-          Attr nameNode = document.createAttribute("name");
-          nameNode.setValue(string.getKey());
-          stringNode.setAttributeNode(nameNode);
-          ToStringVisitor visitor = new ToStringVisitor();
-          string.getValue().accept(visitor);
-          Text text = document.createTextNode(visitor.fragmentVisitor.getStringResult());
-          stringNode.appendChild(text);
+    private int arrayIndex;
 
-          resources.appendChild(stringNode);
-        }
-
-        for (String name : arrays.keySet()) {
-          Element arrayNode = document.createElement("string-array");
-          Attr nameNode = document.createAttribute("name");
-          nameNode.setValue(name);
-          arrayNode.setAttributeNode(nameNode);
+    public MessageIterator(XMLStreamReader reader) {
+      this.reader = reader;
+    }
 
-          for (IndexedMessage message : arrays.get(name)) {
-            Element item = document.createElement("item");
-            ToStringVisitor visitor = new ToStringVisitor();
-            message.getMessage().accept(visitor);
-            Text text = document.createTextNode(visitor.fragmentVisitor.getStringResult());
-            item.appendChild(text);
-            arrayNode.appendChild(item);
+    @Override
+    protected Message computeNext() {
+      try {
+        while (reader.hasNext()) {
+          int event = reader.next();
+          if (event == XMLStreamConstants.END_ELEMENT) {
+            String tag = reader.getLocalName();
+            if ("string-array".equals(tag) || "plurals".equals(tag)) {
+              groupName = null;
+            }
+            continue;
+          }
+          if (event != XMLStreamConstants.START_ELEMENT) {
+            continue;
+          }
+          String tag = reader.getLocalName();
+          if ("string".equals(tag)) {
+            String name = reader.getAttributeValue(null, "name");
+            return new FormattedMessage(AndroidMessageKey.forSimpleMessage(name).toString(),
+                readText());
+          } else if ("string-array".equals(tag) || "plurals".equals(tag)) {
+            groupName = reader.getAttributeValue(null, "name");
+            inPlurals = "plurals".equals(tag);
+            arrayIndex = 0;
+          } else if ("item".equals(tag) && groupName != null) {
+            AndroidMessageKey key;
+            if (inPlurals) {
+              String quantity = reader.getAttributeValue(null, "quantity");
+              key = AndroidMessageKey.forPlural(groupName,
+                  AndroidMessageKey.PluralForm.of(quantity));
+            } else {
+              key = AndroidMessageKey.forArrayPosition(groupName, arrayIndex++);
+            }
+            return new FormattedMessage(key.toString(), readText());
           }
+        }
+        return endOfData();
+      } catch (XMLStreamException e) {
+        throw new RuntimeException(e);
+      }
+    }
 
-          resources.appendChild(arrayNode);
+    /**
+     * Read the text of the current element, up to its first child element if
+     * any, and skip to the end of the element.
+     */
+    private String readText() throws XMLStreamException {
+      StringBuilder text = new StringBuilder();
+      boolean inText = true;
+      int depth = 1;
+      while (depth > 0) {
+        switch (reader.next()) {
+          case XMLStreamConstants.CHARACTERS:
+          case XMLStreamConstants.CDATA:
+          case XMLStreamConstants.SPACE:
+            if (inText) {
+              text.append(reader.getTextCharacters(), reader.getTextStart(),
+                  reader.getTextLength());
+            }
+            break;
+          case XMLStreamConstants.START_ELEMENT:
+            inText = false;
+            depth++;
+            break;
+          case XMLStreamConstants.END_ELEMENT:
+            depth--;
+            break;
+          default:
+            break;
         }
+      }
+      return text.toString();
+    }
+  }
 
-        for (String name : plurals.rowKeySet()) {
-          Element pluralsNode = document.createElement("plurals");
-          Attr nameNode = document.createAttribute("name");
-          nameNode.setValue(name);
-          pluralsNode.setAttributeNode(nameNode);
+  @Override
+  public WritableMessageCatalog writeTo(OutputStream ostr) throws IOException {
+    final Writer out = new OutputStreamWriter(ostr, Charsets.UTF_8);
+    final XMLStreamWriter writer;
+    try {
+      out.write("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"no\"?>\n");
+      writer = XMLOutputFactory.newInstance().createXMLStreamWriter(out);
+      writer.writeStartElement("resources");
+    } catch (XMLStreamException e) {
+      throw new IOException(e);
+    }
 
-          for (Map.Entry<AndroidMessageKey.PluralForm, Message> form : plurals.row(name).entrySet()) {
-            Element item = document.createElement("item");
-            Attr quantity = document.createAttribute("quantity");
-            quantity.setValue(form.getKey().getValue());
-            item.setAttributeNode(quantity);
+    return new WritableMessageCatalog() {
 
-            ToStringVisitor visitor = new ToStringVisitor();
-            form.getValue().accept(visitor);
-            Text text = document.createTextNode(visitor.fragmentVisitor.getStringResult());
-            item.appendChild(text);
+      /**
+       * Key of the {@code string-array} or {@code plurals} group being
+       * buffered, or null if no group is open.
+       */
+      private AndroidMessageKey groupKey;
 
-            pluralsNode.appendChild(item);
-          }
+      /**
+       * Element and name of the {@code string-array} and {@code plurals}
+       * groups already written.
+       */
+      private final Set<String> closedGroups = Sets.newHashSet();
 
-          resources.appendChild(pluralsNode);
-        }
+      private final SortedMap<Integer, Message> arrayItems = Maps.newTreeMap();
 
-        TransformerFactory transformerFactory = TransformerFactory.newInstance();
-        Transformer transformer;
-        try {
-          transformer = transformerFactory.newTransformer();
-          transformer.setOutputProperty(OutputKeys.INDENT, "yes");
-          transformer.setOutputProperty("{http://xml.apache.org/xslt}indent-amount", "2");
-        } catch (TransformerConfigurationException e) {
-          throw new IOException(e);
-        }
+      private final Map<AndroidMessageKey.PluralForm, Message> pluralItems =
+          Maps.newLinkedHashMap();
 
+      @Override
+      public void close() throws IOException {
         try {
-          transformer.transform(new DOMSource(document), new StreamResult(ostr));
-        } catch (TransformerException e) {
+          closeGroup();
+          writer.writeCharacters("\n");
+          writer.writeEndElement();
+          writer.writeCharacters("\n");
+          writer.close();
+        } catch (XMLStreamException e) {
           throw new IOException(e);
         }
+        out.flush();
       }
 
       @Override
@@ -224,40 +245,99 @@ public class AndroidStrings implements MessageCatalog {
         }
 
         AndroidMessageKey key = AndroidMessageKey.parse(msg.getId());
-        switch (key.getType()) {
+        try {
+          if (groupKey != null && (groupKey.getType() != key.getType()
+              || !groupKey.getKey().equals(key.getKey()))) {
+            closeGroup();
+          }
+          switch (key.getType()) {
+
+            case STRING:
+              writer.writeCharacters("\n  ");
+              writer.writeStartElement("string");
+              writer.writeAttribute("name", key.getKey());
+              writer.writeCharacters(toText(msg));
+              writer.writeEndElement();
+              break;
+            case ARRAY:
+              openGroup(key);
+              arrayItems.put(key.getIndex(), msg);
+              break;
+            case PLURAL:
+              openGroup(key);
+              pluralItems.put(key.getPluralForm(), msg);
+              break;
+          }
+        } catch (XMLStreamException e) {
+          throw new IOException(e);
+        }
+      }
 
-          case STRING:
-            strings.put(key.getKey(), msg);
-            break;
-          case ARRAY:
-            arrays.put(key.getKey(), new IndexedMessage(key.getIndex(), msg));
-            break;
-          case PLURAL:
-            plurals.put(key.getKey(), key.getPluralForm(), msg);
-            break;
+      /**
+       * Start buffering the {@code string-array} or {@code plurals} group of a
+       * key, unless it is the one already open.
+       *
+       * @throws IOException if the group was already written
+       */
+      private void openGroup(AndroidMessageKey key) throws IOException {
+        if (groupKey != null) {
+          return;
+        }
+        String group = getElementName(key) + " " + key.getKey();
+        if (closedGroups.contains(group)) {
+          throw new IOException("Items of " + group + " are not contiguous");
+        }
+        groupKey = key;
+      }
+
+      /**
+       * Write out the buffered {@code string-array} or {@code plurals} group,
+       * if any.
+       */
+      private void closeGroup() throws XMLStreamException {
+        if (groupKey == null) {
+          return;
+        }
+        closedGroups.add(getElementName(groupKey) + " " + groupKey.getKey());
+        writer.writeCharacters("\n  ");
+        if (groupKey.getType() == AndroidMessageKey.AndroidMessageType.ARRAY) {
+          writer.writeStartElement("string-array");
+          writer.writeAttribute("name", groupKey.getKey());
+          for (Message item : arrayItems.values()) {
+            writer.writeCharacters("\n    ");
+            writer.writeStartElement("item");
+            writer.writeCharacters(toText(item));
+            writer.writeEndElement();
+          }
+          arrayItems.clear();
+        } else {
+          writer.writeStartElement("plurals");
+          writer.writeAttribute("name", groupKey.getKey());
+          for (Map.Entry<AndroidMessageKey.PluralForm, Message> form : pluralItems.entrySet()) {
+            writer.writeCharacters("\n    ");
+            writer.writeStartElement("item");
+            writer.writeAttribute("quantity", form.getKey().getValue());
+            writer.writeCharacters(toText(form.getValue()));
+            writer.writeEndElement();
+          }
+          pluralItems.clear();
         }
+        writer.writeCharacters("\n  ");
+        writer.writeEndElement();
+        groupKey = null;
       }
     };
   }
 
-  private static class IndexedMessage implements Comparable<IndexedMessage> {
-
-    private final int index;
-    private final Message message;
-
-    public IndexedMessage(int index, Message message) {
-      this.index = index;
-      this.message = message;
-    }
-
-    public Message getMessage() {
-      return message;
-    }
+  private static String getElementName(AndroidMessageKey key) {
+    return key.getType() == AndroidMessageKey.AndroidMessageType.ARRAY
+        ? "string-array" : "plurals";
+  }
 
-    @Override
-    public int compareTo(IndexedMessage other) {
-      return index - other.index;
-    }
+  private static String toText(Message message) {
+    ToStringVisitor visitor = new ToStringVisitor();
+    message.accept(visitor);
+    return visitor.fragmentVisitor.getStringResult();
   }
 
 }
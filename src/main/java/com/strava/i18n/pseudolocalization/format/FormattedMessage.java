@@ -17,15 +17,10 @@
 package com.strava.i18n.pseudolocalization.format;
 
 import com.google.common.base.Objects;
-import com.google.i18n.pseudolocalization.message.MessageFragment;
+import com.google.i18n.pseudolocalization.message.Placeholder;
 import com.google.i18n.pseudolocalization.message.SimpleMessage;
-import com.google.i18n.pseudolocalization.message.SimpleTextFragment;
 import com.google.i18n.pseudolocalization.message.impl.AbstractPlaceholder;
-
-import java.util.ArrayList;
-import java.util.List;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import com.google.i18n.pseudolocalization.message.impl.PlaceholderScanner;
 
 /**
  * A message supporting {@link java.util.Formatter}-like placeholders.
@@ -53,27 +48,44 @@ public class FormattedMessage extends SimpleMessage {
     }
   }
 
-  private static final Pattern FORMAT_PATTERN = Pattern.compile(
-      "%(\\d+\\$)?([-#+ 0,(\\<]*)?(\\d+)?(\\.\\d+)?([tT])?([a-zA-Z%])");
-
-  private static List<MessageFragment> parseMessage(String text) {
-    List<MessageFragment> list = new ArrayList<MessageFragment>();
-    Matcher m = FORMAT_PATTERN.matcher(text);
-    int start = 0;
-    while (m.find()) {
-      String plainText = text.substring(start, m.start());
-      start = m.end();
-      if (plainText.length() > 0) {
-        list.add(new SimpleTextFragment(plainText));
+  /**
+   * Scans placeholders of the form
+   * {@code %[argument_index$][flags][width][.precision][t]conversion}.
+   */
+  private static final PlaceholderScanner SCANNER = new PlaceholderScanner("%") {
+
+    private static final String FLAGS = "-#+ 0,(<";
+
+    @Override
+    protected int matchPlaceholder(String text, int start) {
+      int pos = start + 1;
+      int end = skipDigits(text, pos);
+      if (end > pos && charAt(text, end, '$')) {
+        pos = end + 1;
+      }
+      while (pos < text.length() && FLAGS.indexOf(text.charAt(pos)) >= 0) {
+        pos++;
       }
-      list.add(new FormattedPlaceholder(m.group()));
+      pos = skipDigits(text, pos);
+      if (charAt(text, pos, '.') && pos + 1 < text.length() && isDigit(text.charAt(pos + 1))) {
+        pos = skipDigits(text, pos + 1);
+      }
+      if ((charAt(text, pos, 't') || charAt(text, pos, 'T'))
+          && pos + 1 < text.length() && isConversion(text.charAt(pos + 1))) {
+        pos++;
+      }
+      return pos < text.length() && isConversion(text.charAt(pos)) ? pos + 1 : -1;
     }
-    String plainText = text.substring(start);
-    if (plainText.length() > 0) {
-      list.add(new SimpleTextFragment(plainText));
+
+    private boolean isConversion(char ch) {
+      return ch == '%' || isLetter(ch);
     }
-    return list;
-  }
+
+    @Override
+    protected Placeholder createPlaceholder(String text) {
+      return new FormattedPlaceholder(text);
+    }
+  };
 
   private final String key;
 
@@ -84,7 +96,7 @@ public class FormattedMessage extends SimpleMessage {
    * @param text the content of the message
    */
   public FormattedMessage(String key, String text) {
-    super(parseMessage(text));
+    super(SCANNER.scan(text));
     this.key = key;
   }
 
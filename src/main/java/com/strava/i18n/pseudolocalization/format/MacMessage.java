@@ -17,15 +17,10 @@
 package com.strava.i18n.pseudolocalization.format;
 
 import com.google.common.base.Objects;
-import com.google.i18n.pseudolocalization.message.MessageFragment;
+import com.google.i18n.pseudolocalization.message.Placeholder;
 import com.google.i18n.pseudolocalization.message.SimpleMessage;
-import com.google.i18n.pseudolocalization.message.SimpleTextFragment;
 import com.google.i18n.pseudolocalization.message.impl.AbstractPlaceholder;
-
-import java.util.ArrayList;
-import java.util.List;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import com.google.i18n.pseudolocalization.message.impl.PlaceholderScanner;
 
 /**
  * Represents a message in an Apple {@code .strings} file.
@@ -57,40 +52,73 @@ public class MacMessage extends SimpleMessage {
   }
 
   /**
-   * Pattern matching an Objective-C formatter.
+   * Scans Objective-C formatters of the form
+   * {@code %[argument_index$][width]conversion}.
    */
-  private static final Pattern FORMAT_PATTERN = Pattern.compile("%(\\d+\\$)?(\\d+)?([idf@%])");
-
-  private static List<MessageFragment> parseMessage(String text) {
-    List<MessageFragment> list = new ArrayList<MessageFragment>();
-    Matcher m = FORMAT_PATTERN.matcher(text);
-    int start = 0;
-    while (m.find()) {
-      String plainText = text.substring(start, m.start());
-      start = m.end();
-      if (plainText.length() > 0) {
-        list.add(new SimpleTextFragment(plainText));
+  private static final PlaceholderScanner SCANNER = new PlaceholderScanner("%") {
+
+    private static final String CONVERSIONS = "idf@%";
+
+    @Override
+    protected int matchPlaceholder(String text, int start) {
+      int pos = skipDigits(text, start + 1);
+      if (pos > start + 1 && charAt(text, pos, '$')) {
+        pos = skipDigits(text, pos + 1);
       }
-      list.add(new MacPlaceholder(m.group()));
+      return pos < text.length() && CONVERSIONS.indexOf(text.charAt(pos)) >= 0 ? pos + 1 : -1;
     }
-    String plainText = text.substring(start);
-    if (plainText.length() > 0) {
-      list.add(new SimpleTextFragment(plainText));
+
+    @Override
+    protected Placeholder createPlaceholder(String text) {
+      return new MacPlaceholder(text);
     }
-    return list;
-  }
+  };
 
   private final String key;
+  private final String comment;
+  private String trailingComment;
 
   /**
-   * Exhaustive constructor.
+   * Constructor for a message with no comment.
    *
    * @param key the message's identifier.
    * @param text the message's text.
    */
   public MacMessage(String key, String text) {
-    super(parseMessage(text));
+    this(key, text, null);
+  }
+
+  /**
+   * Exhaustive constructor.
+   *
+   * @param key the message's identifier.
+   * @param text the message's text.
+   * @param comment the comments preceding the message, or null if none.
+   */
+  public MacMessage(String key, String text, String comment) {
+    super(SCANNER.scan(text));
     this.key = key;
+    this.comment = comment;
+  }
+
+  /**
+   * @return the comments preceding this message, delimiters included, or null
+   *     if none.
+   */
+  public String getComment() {
+    return comment;
+  }
+
+  /**
+   * @return the comments following this message at the end of its file, if it
+   *     is the last one, delimiters included, or null if none.
+   */
+  public String getTrailingComment() {
+    return trailingComment;
+  }
+
+  void setTrailingComment(String trailingComment) {
+    this.trailingComment = trailingComment;
   }
 
   @Override
@@ -17,18 +17,15 @@
 package com.strava.i18n.pseudolocalization.format;
 
 import com.google.common.base.Charsets;
-import com.google.common.collect.Lists;
-import com.google.common.io.CharStreams;
-import com.google.common.io.LineProcessor;
+import com.google.common.collect.AbstractIterator;
+import com.google.common.io.ByteStreams;
 import com.google.i18n.pseudolocalization.format.MessageCatalog;
 import com.google.i18n.pseudolocalization.format.ReadableMessageCatalog;
 import com.google.i18n.pseudolocalization.format.WritableMessageCatalog;
 import com.google.i18n.pseudolocalization.message.Message;
 
 import java.io.*;
-import java.util.List;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.Iterator;
 
 /**
  * Represents an Apple {@code .strings} file.
@@ -39,57 +36,308 @@ public class MacStrings implements MessageCatalog {
 
   @Override
   public ReadableMessageCatalog readFrom(InputStream istr) throws IOException {
-    InputStreamReader reader = new InputStreamReader(istr, Charsets.UTF_8);
-    final List<Message> messages = Lists.newArrayList();
-
-    return CharStreams.readLines(reader, new LineProcessor<ReadableMessageCatalog>() {
-
-      private final Pattern MAC_STRING = Pattern.compile(
-          "^(\\s)?\"([A-Z1-9_]+)\"(\\s)?=(\\s)?\"(.+)\";(\\s)?$");
+    final String text = decode(ByteStreams.toByteArray(istr));
 
+    return new ReadableMessageCatalog() {
       @Override
-      public boolean processLine(String line) throws IOException {
-        Matcher matcher = MAC_STRING.matcher(line);
-        if (matcher.matches()) {
-          String key = matcher.group(2);
-          String value = matcher.group(5);
-          messages.add(new MacMessage(key, value));
-        }
-        return true;
+      public void close() throws IOException {
+        // nop
       }
 
+      /**
+       * Read messages lazily, as the returned iterable is iterated.  Comments
+       * following the last entry are attached to its {@link MacMessage} as its
+       * trailing comment.
+       * <p>
+       * Malformed input is only detected when the iteration reaches it: the
+       * iterator's {@code hasNext()} then throws an
+       * {@link IllegalArgumentException} giving the line of the error, after
+       * the preceding messages have been returned.
+       */
       @Override
-      public ReadableMessageCatalog getResult() {
-        return new ReadableMessageCatalog() {
+      public Iterable<Message> readMessages() throws IOException {
+        return new Iterable<Message>() {
           @Override
-          public void close() throws IOException {
-            // nop
+          public Iterator<Message> iterator() {
+            return new Lexer(text);
           }
+        };
+      }
+    };
+  }
 
-          @Override
-          public Iterable<Message> readMessages() throws IOException {
-            return messages;
+  /**
+   * Decode the content of a {@code .strings} file, which is UTF-16 if it
+   * starts with a byte order mark and UTF-8 otherwise.
+   */
+  private static String decode(byte[] bytes) {
+    if (bytes.length >= 2 && ((bytes[0] == (byte) 0xfe && bytes[1] == (byte) 0xff)
+        || (bytes[0] == (byte) 0xff && bytes[1] == (byte) 0xfe))) {
+      return new String(bytes, Charsets.UTF_16);
+    }
+    String text = new String(bytes, Charsets.UTF_8);
+    return text.startsWith("\ufeff") ? text.substring(1) : text;
+  }
+
+  /**
+   * Lazily reads the entries of a {@code .strings} file, in source order.
+   * Entries are of the form {@code "key" = "value";}, where either string may
+   * span lines or be left unquoted if it is made of letters, digits and
+   * underscores only, and {@code "key";} is short for {@code "key" = "key";}.
+   * Comments preceding an entry are attached to its message, and comments
+   * following the last one are attached to the last message, so comments are
+   * read along with the entry they follow.
+   */
+  private static class Lexer extends AbstractIterator<Message> {
+
+    private final String text;
+    private int pos = 0;
+
+    /**
+     * Comments following the last entry read, which precede the next one.
+     */
+    private String nextComment;
+
+    public Lexer(String text) {
+      this.text = text;
+    }
+
+    @Override
+    protected Message computeNext() {
+      String comment = nextComment != null ? nextComment : skipWhitespaceAndComments();
+      nextComment = null;
+      if (pos == text.length()) {
+        return endOfData();
+      }
+      String key = readString();
+      String value;
+      skipWhitespaceAndComments();
+      if (current() == '=') {
+        pos++;
+        skipWhitespaceAndComments();
+        value = readString();
+        skipWhitespaceAndComments();
+      } else {
+        value = key;
+      }
+      expect(';');
+      MacMessage message = new MacMessage(key, value, comment);
+      nextComment = skipWhitespaceAndComments();
+      if (pos == text.length()) {
+        message.setTrailingComment(nextComment);
+        nextComment = null;
+      }
+      return message;
+    }
+
+    /**
+     * Skip whitespace and comments up to the next token.
+     *
+     * @return the comments skipped, separated by newlines, or null if none
+     */
+    private String skipWhitespaceAndComments() {
+      StringBuilder comments = null;
+      while (pos < text.length()) {
+        char ch = text.charAt(pos);
+        int end;
+        if (Character.isWhitespace(ch)) {
+          pos++;
+          continue;
+        } else if (text.startsWith("/*", pos)) {
+          end = text.indexOf("*/", pos + 2);
+          if (end < 0) {
+            throw error("Unterminated comment");
           }
-        };
+          end += 2;
+        } else if (text.startsWith("//", pos)) {
+          end = text.indexOf('\n', pos);
+          if (end < 0) {
+            end = text.length();
+          }
+        } else {
+          break;
+        }
+        if (comments == null) {
+          comments = new StringBuilder();
+        } else {
+          comments.append('\n');
+        }
+        comments.append(text, pos, end);
+        pos = end;
       }
-    });
+      return comments == null ? null : comments.toString();
+    }
+
+    private String readString() {
+      if (current() != '"') {
+        int start = pos;
+        while (pos < text.length() && isUnquotedChar(text.charAt(pos))) {
+          pos++;
+        }
+        if (start == pos) {
+          throw error("Expected a string");
+        }
+        return text.substring(start, pos);
+      }
+
+      pos++;
+      int run = pos;
+      StringBuilder value = null;
+      while (pos < text.length()) {
+        char ch = text.charAt(pos);
+        if (ch == '"') {
+          String result;
+          if (value == null) {
+            result = text.substring(run, pos);
+          } else {
+            result = value.append(text, run, pos).toString();
+          }
+          pos++;
+          return result;
+        }
+        if (ch != '\\') {
+          pos++;
+          continue;
+        }
+        if (value == null) {
+          value = new StringBuilder();
+        }
+        value.append(text, run, pos);
+        pos++;
+        if (pos == text.length()) {
+          break;
+        }
+        ch = text.charAt(pos++);
+        switch (ch) {
+          case 'n':
+            value.append('\n');
+            break;
+          case 't':
+            value.append('\t');
+            break;
+          case 'r':
+            value.append('\r');
+            break;
+          case 'u':
+          case 'U':
+            if (pos + 4 > text.length()) {
+              throw error("Malformed unicode escape");
+            }
+            try {
+              value.append((char) Integer.parseInt(text.substring(pos, pos + 4), 16));
+            } catch (NumberFormatException e) {
+              throw error("Malformed unicode escape");
+            }
+            pos += 4;
+            break;
+          default:
+            value.append(ch);
+            break;
+        }
+        run = pos;
+      }
+      throw error("Unterminated string");
+    }
+
+    private static boolean isUnquotedChar(char ch) {
+      return ch == '_' || Character.isLetterOrDigit(ch);
+    }
+
+    private char current() {
+      return pos < text.length() ? text.charAt(pos) : 0;
+    }
+
+    private void expect(char ch) {
+      if (current() != ch) {
+        throw error("Expected '" + ch + "'");
+      }
+      pos++;
+    }
+
+    private IllegalArgumentException error(String message) {
+      int line = 1;
+      for (int i = 0; i < pos && i < text.length(); i++) {
+        if (text.charAt(i) == '\n') {
+          line++;
+        }
+      }
+      return new IllegalArgumentException(message + " at line " + line);
+    }
   }
 
   @Override
-  public WritableMessageCatalog writeTo(final OutputStream ostr) throws IOException {
+  public WritableMessageCatalog writeTo(OutputStream ostr) throws IOException {
+    final Writer writer = new BufferedWriter(new OutputStreamWriter(ostr, Charsets.UTF_8));
     return new WritableMessageCatalog() {
+      /**
+       * Trailing comment of the last message read from a file, written when
+       * the catalog is closed.
+       */
+      private String trailingComment;
+
       @Override
       public void close() throws IOException {
-        // nop
+        if (trailingComment != null) {
+          writer.write(trailingComment);
+          writer.write('\n');
+        }
+        writer.flush();
       }
 
       @Override
       public void writeMessage(Message msg) throws IOException {
+        if (msg instanceof MacMessage) {
+          MacMessage message = (MacMessage) msg;
+          if (message.getComment() != null) {
+            writer.write(message.getComment());
+            writer.write('\n');
+          }
+          if (message.getTrailingComment() != null) {
+            trailingComment = message.getTrailingComment();
+          }
+        }
         ToStringVisitor visitor = new ToStringVisitor();
         msg.accept(visitor);
-        String value = visitor.fragmentVisitor.getStringResult();
-        String line = String.format("\"%s\" = \"%s\";\n", msg.getId(), value);
-        ostr.write(line.getBytes(Charsets.UTF_8));
+        writeQuoted(msg.getId());
+        writer.write(" = ");
+        writeQuoted(visitor.fragmentVisitor.getStringResult());
+        writer.write(";\n");
+      }
+
+      /**
+       * Write a quoted string, copying runs of characters which need no
+       * escaping in one call.
+       */
+      private void writeQuoted(String value) throws IOException {
+        writer.write('"');
+        int run = 0;
+        for (int i = 0; i < value.length(); i++) {
+          String escape;
+          switch (value.charAt(i)) {
+            case '"':
+              escape = "\\\"";
+              break;
+            case '\\':
+              escape = "\\\\";
+              break;
+            case '\n':
+              escape = "\\n";
+              break;
+            case '\t':
+              escape = "\\t";
+              break;
+            case '\r':
+              escape = "\\r";
+              break;
+            default:
+              continue;
+          }
+          writer.write(value, run, i - run);
+          writer.write(escape);
+          run = i + 1;
+        }
+        writer.write(value, run, value.length() - run);
+        writer.write('"');
       }
     };
   }
@@ -19,21 +19,15 @@ package com.strava.i18n.pseudolocalization.format;
 import com.google.common.base.Objects;
 import com.google.i18n.pseudolocalization.PseudolocalizationException;
 import com.google.i18n.pseudolocalization.message.MessageFragment;
+import com.google.i18n.pseudolocalization.message.Placeholder;
 import com.google.i18n.pseudolocalization.message.SimpleMessage;
 import com.google.i18n.pseudolocalization.message.SimpleNonlocalizableTextFragment;
-import com.google.i18n.pseudolocalization.message.SimpleTextFragment;
 import com.google.i18n.pseudolocalization.message.impl.AbstractPlaceholder;
-import org.htmlparser.Attribute;
-import org.htmlparser.Parser;
-import org.htmlparser.Tag;
-import org.htmlparser.Text;
-import org.htmlparser.util.ParserException;
-import org.htmlparser.visitors.NodeVisitor;
+import com.google.i18n.pseudolocalization.message.impl.MarkupTokenizer;
+import com.google.i18n.pseudolocalization.message.impl.PlaceholderScanner;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 /**
  * Represents a message in a YAML file.
@@ -62,56 +56,52 @@ public class YamlMessage extends SimpleMessage {
   }
 
   /**
-   * Pattern matching a YAML formatter
+   * Scans YAML formatters of the form {@code %{name}}.
    */
-  private static final Pattern FORMAT_PATTERN = Pattern.compile("%\\{[a-zA-Z_]+\\}");
+  private static final PlaceholderScanner SCANNER = new PlaceholderScanner("%") {
 
-  private static List<MessageFragment> parseMessage(String text)
-      throws PseudolocalizationException {
-    Parser parser = Parser.createParser(text, "UTF-8");
-    final List<MessageFragment> list = new ArrayList<MessageFragment>();
-    try {
-      parser.visitAllNodesWith(new NodeVisitor() {
-        @Override
-        public void visitTag(Tag tag) {
-          StringBuffer tagString = new StringBuffer();
-          tagString.append('<');
-          for (Attribute attribute : (List<Attribute>) tag.getAttributesEx()) {
-            attribute.toString(tagString);
-          }
-          tagString.append('>');
-
-          list.add(new SimpleNonlocalizableTextFragment(tagString.toString()));
-        }
-
-        @Override
-        public void visitEndTag(Tag tag) {
-          list.add(new SimpleNonlocalizableTextFragment(tag.toHtml(true)));
-        }
-
-        @Override
-        public void visitStringNode(Text node) {
-          String text = node.getText();
-          Matcher m = FORMAT_PATTERN.matcher(text);
-          int start = 0;
-          while (m.find()) {
-            String plainText = text.substring(start, m.start());
-            start = m.end();
-            if (plainText.length() > 0) {
-              list.add(new SimpleTextFragment(plainText));
-            }
-            list.add(new YamlPlaceholder(m.group()));
-          }
-          String plainText = text.substring(start);
-          if (plainText.length() > 0) {
-            list.add(new SimpleTextFragment(plainText));
-          }
-        }
-      });
-    } catch (ParserException pe) {
-      throw new PseudolocalizationException(pe);
+    @Override
+    protected int matchPlaceholder(String text, int start) {
+      int pos = start + 1;
+      if (!charAt(text, pos, '{')) {
+        return -1;
+      }
+      pos++;
+      while (pos < text.length() && (isLetter(text.charAt(pos)) || text.charAt(pos) == '_')) {
+        pos++;
+      }
+      return pos > start + 2 && charAt(text, pos, '}') ? pos + 1 : -1;
+    }
+
+    @Override
+    protected Placeholder createPlaceholder(String text) {
+      return new YamlPlaceholder(text);
     }
+  };
 
+  private static List<MessageFragment> parseMessage(String text) {
+    final List<MessageFragment> list = new ArrayList<MessageFragment>();
+    MarkupTokenizer.tokenize(text, false, new MarkupTokenizer.Visitor() {
+      @Override
+      public void visitText(String text) {
+        SCANNER.scan(text, list);
+      }
+
+      @Override
+      public void visitTag(MarkupTokenizer.Tag tag) {
+        list.add(new SimpleNonlocalizableTextFragment(tag.toHtml()));
+      }
+
+      @Override
+      public void visitEndTag(String html) {
+        list.add(new SimpleNonlocalizableTextFragment(html));
+      }
+
+      @Override
+      public void visitComment(String html) {
+        list.add(new SimpleNonlocalizableTextFragment(html));
+      }
+    });
     return list;
   }
 
@@ -122,6 +112,8 @@ public class YamlMessage extends SimpleMessage {
    *
    * @param key the message's identifier.
    * @param text the message's text.
+   * @throws PseudolocalizationException kept for compatibility, parsing the
+   *     text no longer fails
    */
   public YamlMessage(String key, String text) throws PseudolocalizationException {
     super(parseMessage(text));
@@ -18,9 +18,8 @@ package com.strava.i18n.pseudolocalization.format;
 
 import com.google.common.base.Charsets;
 import com.google.common.base.Joiner;
-import com.google.common.base.Splitter;
+import com.google.common.collect.AbstractIterator;
 import com.google.common.collect.Lists;
-import com.google.common.collect.Maps;
 import com.google.i18n.pseudolocalization.PseudolocalizationException;
 import com.google.i18n.pseudolocalization.format.MessageCatalog;
 import com.google.i18n.pseudolocalization.format.ReadableMessageCatalog;
@@ -28,29 +27,49 @@ import com.google.i18n.pseudolocalization.format.WritableMessageCatalog;
 import com.google.i18n.pseudolocalization.message.Message;
 import org.yaml.snakeyaml.DumperOptions;
 import org.yaml.snakeyaml.Yaml;
+import org.yaml.snakeyaml.emitter.Emitter;
+import org.yaml.snakeyaml.events.DocumentEndEvent;
+import org.yaml.snakeyaml.events.DocumentStartEvent;
+import org.yaml.snakeyaml.events.Event;
+import org.yaml.snakeyaml.events.ImplicitTuple;
+import org.yaml.snakeyaml.events.MappingEndEvent;
+import org.yaml.snakeyaml.events.MappingStartEvent;
+import org.yaml.snakeyaml.events.NodeEvent;
+import org.yaml.snakeyaml.events.ScalarEvent;
+import org.yaml.snakeyaml.events.StreamEndEvent;
+import org.yaml.snakeyaml.events.StreamStartEvent;
+import org.yaml.snakeyaml.nodes.NodeId;
+import org.yaml.snakeyaml.nodes.Tag;
+import org.yaml.snakeyaml.resolver.Resolver;
 
 import java.io.*;
 import java.util.*;
 
 /**
  * Represents a set of messages in a YAML file.
+ * <p>
+ * Messages are written in the order they are given, each in the mappings
+ * named by the prefixes of its id, so messages sharing a prefix must be written
+ * contiguously, as they are read.  Writing a message under a prefix which was
+ * already left, or with an id which is also the prefix of another message,
+ * fails with an {@link IOException}, as a key would be written twice.  Messages
+ * sorted by id are in a suitable order, unless some id is a prefix of another.
+ * Mappings are written before the catalog is closed, rather than buffered until
+ * then, so a message cannot be merged back into a mapping already written.
  *
  * @author Julien Silland (julien@strava.com)
  */
 public class YamlStrings implements MessageCatalog {
 
+  private static final Resolver RESOLVER = new Resolver();
+
+  private static final ImplicitTuple STRING = new ImplicitTuple(true, true);
+
   Joiner DOT = Joiner.on('.');
 
   @Override
   public ReadableMessageCatalog readFrom(InputStream istr) throws IOException {
-    InputStreamReader reader = new InputStreamReader(istr, Charsets.UTF_8);
-    final List<Message> messages = Lists.newArrayList();
-
-    try {
-      marshall(new Yaml().load(reader), new Stack<String>(), messages);
-    } catch (PseudolocalizationException pe) {
-      throw new IOException(pe);
-    }
+    final Reader reader = new InputStreamReader(istr, Charsets.UTF_8);
 
     return new ReadableMessageCatalog() {
       @Override
@@ -60,67 +79,399 @@ public class YamlStrings implements MessageCatalog {
 
       @Override
       public Iterable<Message> readMessages() throws IOException {
-        return messages;
+        final Iterable<Event> events = new Yaml().parse(reader);
+        return new Iterable<Message>() {
+          @Override
+          public Iterator<Message> iterator() {
+            return new MessageIterator(events.iterator());
+          }
+        };
       }
     };
   }
 
-  public void marshall(Object yaml, Stack<String> keyStack, List<Message> messages)
-      throws PseudolocalizationException {
-    if (!(yaml instanceof Map)) {
-      return;
+  /**
+   * Lazily reads messages from the parse events of a YAML document, in
+   * document order.  Only string values nested in mappings are turned into
+   * messages, identified by the dot-separated path of their keys; values in
+   * sequences and scalars of any other type are skipped.
+   * <p>
+   * Anchored nodes are read as a whole, so that aliases to them can be
+   * expanded where they appear, and so are the values of merge keys
+   * ({@code <<}).  Merged values are produced at the end of the mapping they
+   * are merged into, unless the mapping has an explicit key of the same name.
+   */
+  private class MessageIterator extends AbstractIterator<Message> {
+
+    private final Iterator<Event> events;
+
+    /**
+     * Keys of the enclosing mappings, followed by the key of the value about to
+     * be read if any.  A null key stands for a key which is not a scalar.
+     */
+    private final List<String> path = Lists.newArrayList();
+
+    /**
+     * For each open mapping, the keys read so far.
+     */
+    private final List<Set<String>> keys = Lists.newArrayList();
+
+    /**
+     * For each open mapping, the values merged into it, or null if none.
+     */
+    private final List<Map<String, Object>> merges = Lists.newArrayList();
+
+    /**
+     * Values of the anchors read so far, as returned by {@link #readNode}.
+     */
+    private final Map<String, Object> anchors = new HashMap<String, Object>();
+
+    /**
+     * Messages of a value read as a whole, not returned yet.
+     */
+    private final Deque<Message> pending = new ArrayDeque<Message>();
+
+    /**
+     * Whether the next node in the current mapping is a key.
+     */
+    private boolean expectKey = false;
+
+    public MessageIterator(Iterator<Event> events) {
+      this.events = events;
     }
-    Map<String, Object> entries = (Map<String, Object>) yaml;
-    for (Map.Entry<String, Object> entry : entries.entrySet()) {
-      keyStack.push(entry.getKey());
-      if (entry.getValue() instanceof String) {
-        messages.add(new YamlMessage(DOT.join(keyStack), (String) entry.getValue()));
+
+    @Override
+    protected Message computeNext() {
+      while (pending.isEmpty()) {
+        if (!events.hasNext()) {
+          return endOfData();
+        }
+        Event event = events.next();
+        if (keys.isEmpty()) {
+          // only a mapping at the root of the document holds messages
+          if (event.is(Event.ID.MappingStart) && getAnchor(event) == null) {
+            openMapping();
+          } else if (event instanceof NodeEvent) {
+            addMessages(readNode(event));
+          }
+        } else if (expectKey) {
+          readKey(event);
+        } else {
+          expectKey = true;
+          if (event.is(Event.ID.MappingStart) && getAnchor(event) == null) {
+            openMapping();
+            continue;
+          } else if (event.is(Event.ID.Scalar)) {
+            ScalarEvent scalar = (ScalarEvent) event;
+            String value = readScalar(scalar);
+            if (value != null && !path.contains(null)) {
+              addMessage(value);
+            }
+          } else {
+            addMessages(readNode(event));
+          }
+          path.remove(path.size() - 1);
+        }
+      }
+      return pending.poll();
+    }
+
+    /**
+     * Read a key of the current mapping, or its end.
+     */
+    private void readKey(Event event) {
+      if (event.is(Event.ID.MappingEnd)) {
+        closeMapping();
+        return;
+      }
+      String key = null;
+      if (event.is(Event.ID.Scalar)) {
+        ScalarEvent scalar = (ScalarEvent) event;
+        if (Tag.MERGE.equals(resolve(scalar))) {
+          Map<String, Object> merged = merges.get(merges.size() - 1);
+          if (merged == null) {
+            merged = new LinkedHashMap<String, Object>();
+            merges.set(merges.size() - 1, merged);
+          }
+          merge(merged, readNode(events.next()));
+          return;
+        }
+        key = scalar.getValue();
+        keys.get(keys.size() - 1).add(key);
       } else {
-        marshall(entry.getValue(), keyStack, messages);
+        readNode(event);
+      }
+      path.add(key);
+      expectKey = false;
+    }
+
+    private void openMapping() {
+      keys.add(new HashSet<String>());
+      merges.add(null);
+      expectKey = true;
+    }
+
+    /**
+     * Add the merged values of the current mapping which have no explicit key,
+     * and close it.
+     */
+    private void closeMapping() {
+      Set<String> explicit = keys.remove(keys.size() - 1);
+      Map<String, Object> merged = merges.remove(merges.size() - 1);
+      if (merged != null) {
+        for (Map.Entry<String, Object> entry : merged.entrySet()) {
+          if (!explicit.contains(entry.getKey())) {
+            path.add(entry.getKey());
+            addMessages(entry.getValue());
+            path.remove(path.size() - 1);
+          }
+        }
+      }
+      if (!path.isEmpty()) {
+        path.remove(path.size() - 1);
+      }
+      expectKey = true;
+    }
+
+    /**
+     * Add a message for a string value, at the current path.
+     */
+    private void addMessage(String value) {
+      try {
+        pending.add(new YamlMessage(DOT.join(path), value));
+      } catch (PseudolocalizationException e) {
+        throw new RuntimeException(e);
+      }
+    }
+
+    /**
+     * Add the messages of a value read as a whole, under the current path.
+     *
+     * @param value a value returned by {@link #readNode}
+     */
+    private void addMessages(Object value) {
+      if (value instanceof String) {
+        if (!path.contains(null)) {
+          addMessage((String) value);
+        }
+      } else if (value instanceof Map) {
+        for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+          path.add((String) entry.getKey());
+          addMessages(entry.getValue());
+          path.remove(path.size() - 1);
+        }
       }
-      keyStack.pop();
+    }
+
+    /**
+     * Read a whole node, recording its value if it is anchored.
+     *
+     * @param event the first event of the node
+     * @return a {@link String} for a string scalar, a {@link Map} of the
+     *     scalar keys of a mapping to their values (null for other keys), a
+     *     {@link List} for a sequence, or {@link #OTHER} for other scalars and
+     *     aliases to unknown anchors
+     */
+    private Object readNode(Event event) {
+      if (event.is(Event.ID.Alias)) {
+        Object value = anchors.get(getAnchor(event));
+        return value != null ? value : OTHER;
+      }
+      Object value;
+      if (event.is(Event.ID.Scalar)) {
+        value = readScalar((ScalarEvent) event);
+        return value != null ? value : OTHER;
+      } else if (event.is(Event.ID.SequenceStart)) {
+        List<Object> values = Lists.newArrayList();
+        for (Event item = events.next(); !item.is(Event.ID.SequenceEnd); item = events.next()) {
+          values.add(readNode(item));
+        }
+        value = values;
+      } else {
+        Map<String, Object> values = new LinkedHashMap<String, Object>();
+        Map<String, Object> merged = new LinkedHashMap<String, Object>();
+        for (Event key = events.next(); !key.is(Event.ID.MappingEnd); key = events.next()) {
+          if (key.is(Event.ID.Scalar) && Tag.MERGE.equals(resolve((ScalarEvent) key))) {
+            merge(merged, readNode(events.next()));
+            continue;
+          }
+          String name = null;
+          if (key.is(Event.ID.Scalar)) {
+            name = ((ScalarEvent) key).getValue();
+          } else {
+            readNode(key);
+          }
+          values.put(name, readNode(events.next()));
+        }
+        for (Map.Entry<String, Object> entry : merged.entrySet()) {
+          if (!values.containsKey(entry.getKey())) {
+            values.put(entry.getKey(), entry.getValue());
+          }
+        }
+        value = values;
+      }
+      String anchor = getAnchor(event);
+      if (anchor != null) {
+        anchors.put(anchor, value);
+      }
+      return value;
+    }
+
+    /**
+     * Read a scalar, recording its value if it is anchored.
+     *
+     * @return the value of the scalar if it is a string, null otherwise
+     */
+    private String readScalar(ScalarEvent scalar) {
+      String value = Tag.STR.equals(resolve(scalar)) ? scalar.getValue() : null;
+      if (scalar.getAnchor() != null) {
+        anchors.put(scalar.getAnchor(), value != null ? value : OTHER);
+      }
+      return value;
     }
   }
 
+  /**
+   * Value of a node which holds no message.
+   */
+  private static final Object OTHER = new Object();
+
+  /**
+   * Merge the value of a merge key into a mapping, keeping the keys already
+   * merged.
+   *
+   * @param merged values merged so far
+   * @param value a mapping, or a sequence of mappings in order of precedence
+   */
+  private static void merge(Map<String, Object> merged, Object value) {
+    if (value instanceof Map) {
+      for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+        if (!merged.containsKey(entry.getKey())) {
+          merged.put((String) entry.getKey(), entry.getValue());
+        }
+      }
+    } else if (value instanceof List) {
+      for (Object item : (List<?>) value) {
+        merge(merged, item);
+      }
+    }
+  }
+
+  private static String getAnchor(Event event) {
+    return event instanceof NodeEvent ? ((NodeEvent) event).getAnchor() : null;
+  }
+
+  private static Tag resolve(ScalarEvent scalar) {
+    String tag = scalar.getTag();
+    if (tag == null || "!".equals(tag)) {
+      return RESOLVER.resolve(NodeId.scalar, scalar.getValue(),
+          scalar.getImplicit().canOmitTagInPlainScalar());
+    }
+    return new Tag(tag);
+  }
+
   @Override
-  public WritableMessageCatalog writeTo(final OutputStream ostr) throws IOException {
+  public WritableMessageCatalog writeTo(OutputStream ostr) throws IOException {
+    final Writer writer = new OutputStreamWriter(ostr, Charsets.UTF_8);
+    DumperOptions options = new DumperOptions();
+    options.setDefaultScalarStyle(DumperOptions.ScalarStyle.DOUBLE_QUOTED);
+    options.setWidth(10000);
+    final Emitter emitter = new Emitter(writer, options);
+    emitter.emit(new StreamStartEvent(null, null));
+    emitter.emit(new DocumentStartEvent(null, null, false, null, null));
+    emitter.emit(new MappingStartEvent(null, null, true, null, null, false));
+
+    /*
+     * Messages are written out as they arrive, in the order they arrive.
+     * Consecutive messages sharing a key prefix end up in the same mapping, as
+     * they do when read by this class.  A prefix which comes back after having
+     * been left, or an id which is also the prefix of another one, would be
+     * written as a duplicate key, and fails with an IOException instead.
+     */
     return new WritableMessageCatalog() {
 
-      Map<String, Object> root = Maps.newHashMap();
+      /**
+       * Keys of the mappings currently open below the root one.
+       */
+      private final List<String> openKeys = Lists.newArrayList();
+
+      /**
+       * Keys already written in the root mapping and in each open one.
+       */
+      private final List<Set<String>> writtenKeys =
+          Lists.<Set<String>>newArrayList(new HashSet<String>());
 
       @Override
       public void close() throws IOException {
-        DumperOptions options = new DumperOptions();
-        options.setDefaultScalarStyle(DumperOptions.ScalarStyle.DOUBLE_QUOTED);
-        options.setWidth(10000);
-        new Yaml(options).dump(root, new OutputStreamWriter(ostr, Charsets.UTF_8));
+        closeMappings(0);
+        emitter.emit(new MappingEndEvent(null, null));
+        emitter.emit(new DocumentEndEvent(null, null, false));
+        emitter.emit(new StreamEndEvent(null, null));
+        writer.flush();
       }
 
       @Override
       public void writeMessage(Message message) throws IOException {
-        LinkedList<String> tokens = Lists.newLinkedList();
-        for (String token : Splitter.on('.').split(message.getId())) {
-          tokens.offer(token);
+        String id = message.getId();
+
+        // skip the mappings which are already open
+        int start = 0;
+        int depth = 0;
+        int end = id.indexOf('.');
+        while (end >= 0 && depth < openKeys.size()) {
+          String key = openKeys.get(depth);
+          if (key.length() != end - start || !id.regionMatches(start, key, 0, key.length())) {
+            break;
+          }
+          depth++;
+          start = end + 1;
+          end = id.indexOf('.', start);
         }
-        marshall(root, tokens, message);
-      }
+        closeMappings(depth);
 
-      public void marshall(Map<String, Object> into, LinkedList<String> tokens, Message message) {
-        String token = tokens.poll();
+        // open the remaining ones
+        while (end >= 0) {
+          String key = id.substring(start, end);
+          emitKey(id, key);
+          emitter.emit(new MappingStartEvent(null, null, true, null, null, false));
+          openKeys.add(key);
+          writtenKeys.add(new HashSet<String>());
+          start = end + 1;
+          end = id.indexOf('.', start);
+        }
 
-        if (tokens.isEmpty()) {
-          ToStringVisitor visitor = new ToStringVisitor();
-          message.accept(visitor);
-          String value = visitor.fragmentVisitor.getStringResult();
-          into.put(token, value);
-          return;
+        ToStringVisitor visitor = new ToStringVisitor();
+        message.accept(visitor);
+        emitKey(id, id.substring(start));
+        emitScalar(visitor.fragmentVisitor.getStringResult());
+      }
+
+      /**
+       * Close the open mappings nested deeper than the supplied depth.
+       */
+      private void closeMappings(int depth) throws IOException {
+        while (openKeys.size() > depth) {
+          emitter.emit(new MappingEndEvent(null, null));
+          openKeys.remove(openKeys.size() - 1);
+          writtenKeys.remove(writtenKeys.size() - 1);
         }
+      }
 
-        Map<String, Object> sub = into.containsKey(token) ? (Map<String,
-            Object>) into.get(token) : Maps.<String, Object>newHashMap();
-        into.put(token, sub);
+      /**
+       * Write a key of the innermost open mapping.
+       *
+       * @throws IOException if the key was already written in that mapping
+       */
+      private void emitKey(String id, String key) throws IOException {
+        if (!writtenKeys.get(writtenKeys.size() - 1).add(key)) {
+          throw new IOException("Duplicate key '" + key + "' writing message " + id
+              + ", messages sharing a key prefix must be contiguous");
+        }
+        emitScalar(key);
+      }
 
-        marshall(sub, tokens, message);
+      private void emitScalar(String value) throws IOException {
+        emitter.emit(new ScalarEvent(null, null, STRING, value, null, null, '"'));
       }
     };
   }
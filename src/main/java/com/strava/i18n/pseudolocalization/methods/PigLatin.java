@@ -18,24 +18,45 @@ package com.strava.i18n.pseudolocalization.methods;
 
 import com.google.common.base.CharMatcher;
 import com.google.i18n.pseudolocalization.PseudolocalizationMethod;
+import com.google.i18n.pseudolocalization.PseudolocalizationMethodFactory;
 import com.google.i18n.pseudolocalization.PseudolocalizationPipeline;
+import com.google.i18n.pseudolocalization.StatelessMethod;
+import com.google.i18n.pseudolocalization.TextFragmentTransformer;
 import com.google.i18n.pseudolocalization.message.*;
 import com.ibm.icu.text.BreakIterator;
 
+import java.util.Map;
+
 /**
  * A pseudolocalization method that outputs English messages as their pig latin equivalent.
  *
  * @author Julien Silland (julien@strava.com)
  */
-public class PigLatin extends DefaultVisitor implements PseudolocalizationMethod {
+public class PigLatin extends DefaultVisitor implements TextFragmentTransformer, StatelessMethod {
 
   private static final CharMatcher NON_LETTERS = CharMatcher.JAVA_LETTER.negate();
 
+  /**
+   * Word iterators are costly to look up, and not thread-safe, so each thread
+   * keeps its own.
+   */
+  private static final ThreadLocal<BreakIterator> WORD_ITERATOR = new ThreadLocal<BreakIterator>() {
+    @Override
+    protected BreakIterator initialValue() {
+      return BreakIterator.getWordInstance();
+    }
+  };
+
   /**
    * Registers this method in the global registry of pseudolocalization methods
    */
   public static void register() {
-    PseudolocalizationPipeline.registerMethodClass("piglatin", PigLatin.class);
+    PseudolocalizationPipeline.registerMethodFactory("piglatin",
+        new PseudolocalizationMethodFactory() {
+          public PseudolocalizationMethod create(Map<String, String> options) {
+            return new PigLatin();
+          }
+        });
   }
 
   @Override
@@ -45,19 +66,20 @@ public class PigLatin extends DefaultVisitor implements PseudolocalizationMethod
 
   @Override
   public void visitTextFragment(VisitorContext context, TextFragment fragment) {
-    String text = fragment.getText();
+    context.replaceFragment(fragment, new SimpleTextFragment(transform(fragment.getText())));
+  }
 
-    BreakIterator breakIterator = BreakIterator.getWordInstance();
+  @Override
+  public String transform(String text) {
+    BreakIterator breakIterator = WORD_ITERATOR.get();
     breakIterator.setText(text);
-    StringBuilder stringBuilder = new StringBuilder();
+    StringBuilder stringBuilder = new StringBuilder(text.length() + 8);
 
     int start = breakIterator.first();
     for (int end = breakIterator.next(); end != BreakIterator.DONE; start = end, end = breakIterator.next()) {
-      String word = text.substring(start, end);
-      stringBuilder.append(pigLatinify(word));
+      appendPigLatin(text, start, end, stringBuilder);
     }
-
-    context.replaceFragment(fragment, new SimpleTextFragment(stringBuilder.toString()));
+    return stringBuilder.toString();
   }
 
   /**
@@ -66,27 +88,51 @@ public class PigLatin extends DefaultVisitor implements PseudolocalizationMethod
    * @param word the word to translate
    */
   public static final String pigLatinify(String word) {
-    if (NON_LETTERS.matchesAllOf(word)) {
-      return word;
+    StringBuilder stringBuilder = new StringBuilder(word.length() + 2);
+    appendPigLatin(word, 0, word.length(), stringBuilder);
+    return stringBuilder.toString();
+  }
+
+  /**
+   * Appends the translation of the word between {@code start} and {@code end}
+   * in {@code text} to a builder
+   */
+  private static void appendPigLatin(String text, int start, int end, StringBuilder out) {
+    if (!hasLetter(text, start, end)) {
+      out.append(text, start, end);
+      return;
+    }
+    int split = firstVowel(text, start, end);
+    out.append(text, split, end).append(text, start, split).append("ay");
+  }
+
+  private static boolean hasLetter(String text, int start, int end) {
+    for (int i = start; i < end; i++) {
+      if (!NON_LETTERS.matches(text.charAt(i))) {
+        return true;
+      }
     }
-    int split = firstVowel(word);
-    return word.substring(split) + word.substring(0, split) + "ay";
+    return false;
   }
 
   /**
-   * Returns the index of the first vowel in the given word
+   * Returns the index of the first vowel in the given word, or the start of the
+   * word if it has none
    *
-   * @param word the word in which to find a vowel
+   * @param text the text containing the word
+   * @param start the start of the word
+   * @param end the end of the word
    */
-  private static int firstVowel(String word) {
-    word = word.toLowerCase();
-    for (int i = 0; i < word.length(); i++) {
-      if (word.charAt(i)=='a' || word.charAt(i)=='e' ||
-          word.charAt(i)=='i' || word.charAt(i)=='o' ||
-          word.charAt(i)=='u') {
-        return i;
+  private static int firstVowel(String text, int start, int end) {
+    for (int i = start; i < end; i++) {
+      switch (text.charAt(i)) {
+        case 'a': case 'e': case 'i': case 'o': case 'u':
+        case 'A': case 'E': case 'I': case 'O': case 'U':
+          return i;
+        default:
+          break;
       }
     }
-    return 0;
+    return start;
   }
 }
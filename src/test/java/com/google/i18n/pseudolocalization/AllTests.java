@@ -15,11 +15,15 @@
  */
 package com.google.i18n.pseudolocalization;
 
+import com.google.i18n.pseudolocalization.format.JavaPropertiesTest;
+import com.google.i18n.pseudolocalization.jfr.FlightRecorderTest;
+import com.google.i18n.pseudolocalization.message.SimpleMessageTest;
 import com.google.i18n.pseudolocalization.methods.AccenterTest;
 import com.google.i18n.pseudolocalization.methods.BracketAdderTest;
 import com.google.i18n.pseudolocalization.methods.ExpanderTest;
 import com.google.i18n.pseudolocalization.methods.FakeBidiTest;
 import com.google.i18n.pseudolocalization.methods.HtmlPreserverTest;
+import com.google.i18n.pseudolocalization.methods.SubstitutionTableTest;
 
 import com.strava.i18n.pseudolocalization.format.AndroidStrings;
 import junit.framework.Test;
@@ -33,11 +37,17 @@ public class AllTests extends TestSuite {
   public static Test suite() {
     TestSuite suite = new TestSuite();
     suite.addTestSuite(AccenterTest.class);
+    suite.addTestSuite(AllocationTest.class);
     suite.addTestSuite(BracketAdderTest.class);
     suite.addTestSuite(ExpanderTest.class);
     suite.addTestSuite(FakeBidiTest.class);
+    suite.addTestSuite(FlightRecorderTest.class);
     suite.addTestSuite(HtmlPreserverTest.class);
+    suite.addTestSuite(JavaPropertiesTest.class);
+    suite.addTestSuite(LocalizationCacheTest.class);
+    suite.addTestSuite(SubstitutionTableTest.class);
     suite.addTestSuite(PipelineTest.class);
+    suite.addTestSuite(SimpleMessageTest.class);
     return suite;
   }
 }
@@ -0,0 +1,252 @@
+/*
+ * Copyright 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.i18n.pseudolocalization;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.ByteStreams;
+import com.google.i18n.pseudolocalization.format.FormatRegistry;
+import com.google.i18n.pseudolocalization.format.MessageCatalog;
+import com.google.i18n.pseudolocalization.format.ReadableMessageCatalog;
+import com.google.i18n.pseudolocalization.format.WritableMessageCatalog;
+import com.google.i18n.pseudolocalization.message.Message;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Checks the number of bytes allocated per message by each built-in method and
+ * by reading and writing each catalog format against a budget, so that
+ * allocation regressions fail the build.
+ * <p>
+ * Budgets are about twice the allocation measured when they were set, to allow
+ * for differences between JVMs; when an optimization lowers the allocation of
+ * a method or format substantially, its budget should be lowered as well.  The
+ * checks are skipped on JVMs which cannot measure per-thread allocation.
+ */
+public class AllocationTest extends PseudolocalizationTestCase {
+
+  /**
+   * Maximum bytes allocated to localize one of the {@link #TEXTS} with a
+   * pipeline made of a single method, including creating the message and
+   * rendering the result.
+   */
+  private static final Map<String, Long> METHOD_BUDGETS = new HashMap<String, Long>();
+
+  /**
+   * Maximum bytes allocated per message to read or write a catalog.
+   */
+  private static final Map<String, Long> READ_BUDGETS = new HashMap<String, Long>();
+  private static final Map<String, Long> WRITE_BUDGETS = new HashMap<String, Long>();
+
+  static {
+    METHOD_BUDGETS.put("accents", 5000L);
+    METHOD_BUDGETS.put("brackets", 2500L);
+    METHOD_BUDGETS.put("expand", 2500L);
+    METHOD_BUDGETS.put("fakebidi", 5000L);
+    METHOD_BUDGETS.put("html", 2200L);
+    METHOD_BUDGETS.put("piglatin", 4000L);
+
+    READ_BUDGETS.put("properties", 3000L);
+    READ_BUDGETS.put("xml", 3000L);
+    READ_BUDGETS.put("strings", 2500L);
+    READ_BUDGETS.put("yml", 10000L);
+
+    WRITE_BUDGETS.put("properties", 1000L);
+    WRITE_BUDGETS.put("xml", 5000L);
+    WRITE_BUDGETS.put("strings", 1000L);
+    WRITE_BUDGETS.put("yml", 3000L);
+  }
+
+  /**
+   * Texts localized by each method: a label, a sentence and some markup.
+   */
+  private static final String[] TEXTS = {
+    "Save changes",
+    "Your activity has been uploaded and will appear in the feeds of your followers.",
+    "Tap <b>Continue</b> to accept the <a href=\"https://example.com/terms\">Terms</a>.",
+  };
+
+  /**
+   * Number of messages in the catalogs read and written.
+   */
+  private static final int CATALOG_SIZE = 200;
+
+  private static final int WARMUP_ROUNDS = 200;
+
+  private static final int MEASURED_ROUNDS = 5;
+
+  /**
+   * An operation whose allocation is measured.
+   */
+  private interface Operation {
+    void run() throws Exception;
+  }
+
+  private com.sun.management.ThreadMXBean threadBean;
+
+  private final List<String> failures = new ArrayList<String>();
+
+  @Override
+  protected void setUp() {
+    ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+    if (bean instanceof com.sun.management.ThreadMXBean
+        && ((com.sun.management.ThreadMXBean) bean).isThreadAllocatedMemorySupported()) {
+      threadBean = (com.sun.management.ThreadMXBean) bean;
+      threadBean.setThreadAllocatedMemoryEnabled(true);
+    }
+  }
+
+  public void testMethods() throws Exception {
+    for (Map.Entry<String, Long> budget : METHOD_BUDGETS.entrySet()) {
+      final PseudolocalizationPipeline pipeline =
+          PseudolocalizationPipeline.buildPipeline(budget.getKey());
+      checkBudget("method " + budget.getKey(), budget.getValue(), TEXTS.length,
+          new Operation() {
+            public void run() {
+              for (String text : TEXTS) {
+                pipeline.localize(text);
+              }
+            }
+          });
+    }
+    assertEquals(Collections.emptyList(), failures);
+  }
+
+  public void testReaders() throws Exception {
+    for (Map.Entry<String, Long> budget : READ_BUDGETS.entrySet()) {
+      final MessageCatalog catalog = FormatRegistry.getMessageCatalog(budget.getKey());
+      final byte[] contents = createCatalog(budget.getKey());
+      assertEquals(CATALOG_SIZE, readCatalog(catalog, contents).size());
+      checkBudget("reading " + budget.getKey(), budget.getValue(), CATALOG_SIZE,
+          new Operation() {
+            public void run() throws IOException {
+              ReadableMessageCatalog input = catalog.readFrom(new ByteArrayInputStream(contents));
+              try {
+                for (Message message : input.readMessages()) {
+                  assertNotNull(message);
+                }
+              } finally {
+                input.close();
+              }
+            }
+          });
+    }
+    assertEquals(Collections.emptyList(), failures);
+  }
+
+  public void testWriters() throws Exception {
+    for (Map.Entry<String, Long> budget : WRITE_BUDGETS.entrySet()) {
+      final MessageCatalog catalog = FormatRegistry.getMessageCatalog(budget.getKey());
+      final List<Message> messages = readCatalog(catalog, createCatalog(budget.getKey()));
+      checkBudget("writing " + budget.getKey(), budget.getValue(), CATALOG_SIZE,
+          new Operation() {
+            public void run() throws IOException {
+              WritableMessageCatalog output = catalog.writeTo(ByteStreams.nullOutputStream());
+              try {
+                for (Message message : messages) {
+                  output.writeMessage(message);
+                }
+              } finally {
+                output.close();
+              }
+            }
+          });
+    }
+    assertEquals(Collections.emptyList(), failures);
+  }
+
+  /**
+   * Check the bytes allocated per message by an operation, taking the lowest
+   * of several rounds once it has been compiled, and record a failure if it is
+   * over budget.
+   */
+  private void checkBudget(String name, long budget, int messages, Operation operation)
+      throws Exception {
+    if (threadBean == null) {
+      return;
+    }
+    for (int i = 0; i < WARMUP_ROUNDS; i++) {
+      operation.run();
+    }
+    long threadId = Thread.currentThread().getId();
+    long allocated = Long.MAX_VALUE;
+    for (int i = 0; i < MEASURED_ROUNDS; i++) {
+      long before = threadBean.getThreadAllocatedBytes(threadId);
+      operation.run();
+      allocated = Math.min(allocated, threadBean.getThreadAllocatedBytes(threadId) - before);
+    }
+    long perMessage = allocated / messages;
+    if (perMessage > budget) {
+      failures.add(name + " allocated " + perMessage + " bytes per message, budget is "
+          + budget);
+    }
+  }
+
+  private static List<Message> readCatalog(MessageCatalog catalog, byte[] contents)
+      throws IOException {
+    List<Message> messages = new ArrayList<Message>();
+    ReadableMessageCatalog input = catalog.readFrom(new ByteArrayInputStream(contents));
+    try {
+      for (Message message : input.readMessages()) {
+        messages.add(message);
+      }
+    } finally {
+      input.close();
+    }
+    return messages;
+  }
+
+  /**
+   * Create a catalog of {@link #CATALOG_SIZE} messages with placeholders and
+   * markup in the syntax of a format.
+   */
+  private static byte[] createCatalog(String format) {
+    StringBuilder catalog = new StringBuilder();
+    if ("xml".equals(format)) {
+      catalog.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<resources>\n");
+    } else if ("yml".equals(format)) {
+      catalog.append("en:\n  section:\n");
+    }
+    for (int i = 0; i < CATALOG_SIZE; i++) {
+      String key = "message" + i;
+      if ("properties".equals(format)) {
+        catalog.append("section.").append(key)
+            .append("=Hello {0}, you have <b>{1}</b> new messages\n");
+      } else if ("xml".equals(format)) {
+        catalog.append("  <string name=\"").append(key)
+            .append("\">Hello %1$s, you have &lt;b&gt;%2$d&lt;/b&gt; new messages</string>\n");
+      } else if ("strings".equals(format)) {
+        catalog.append("\"section.").append(key)
+            .append("\" = \"Hello %@, you have <b>%d</b> new messages\";\n");
+      } else if ("yml".equals(format)) {
+        catalog.append("    ").append(key)
+            .append(": \"Hello %{name}, you have <b>%{count}</b> new messages\"\n");
+      }
+    }
+    if ("xml".equals(format)) {
+      catalog.append("</resources>\n");
+    }
+    return catalog.toString().getBytes(
+        "properties".equals(format) ? Charsets.ISO_8859_1 : Charsets.UTF_8);
+  }
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.i18n.pseudolocalization;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Test for {@link LocalizationCache}.
+ */
+public class LocalizationCacheTest extends PseudolocalizationTestCase {
+
+  public void testHitsAndMisses() {
+    LocalizationCache cache = new LocalizationCache(10);
+    PseudolocalizationPipeline pipeline = PseudolocalizationPipeline.buildPipeline("brackets");
+    assertEquals("[Hello]", cache.localize(pipeline, "Hello"));
+    assertEquals("[Hello]", cache.localize(pipeline, "Hello"));
+    assertEquals("[there]", cache.localize(pipeline, "there"));
+    assertEquals(1, cache.getHitCount());
+    assertEquals(2, cache.getMissCount());
+    assertEquals(2, cache.size());
+  }
+
+  public void testKeyedOnPipeline() {
+    LocalizationCache cache = new LocalizationCache(10);
+    PseudolocalizationPipeline brackets = PseudolocalizationPipeline.buildPipeline("brackets");
+    PseudolocalizationPipeline bidi = PseudolocalizationPipeline.getVariantPipeline("psbidi");
+    assertEquals("[Hello]", cache.localize(brackets, "Hello"));
+    assertEquals("\u202eHello\u202c", cache.localize(bidi, "Hello"));
+    assertEquals(0, cache.getHitCount());
+  }
+
+  public void testEviction() {
+    LocalizationCache cache = new LocalizationCache(2);
+    PseudolocalizationPipeline pipeline = PseudolocalizationPipeline.buildPipeline("brackets");
+    for (int i = 0; i < 5; i++) {
+      cache.localize(pipeline, "message " + i);
+    }
+    assertEquals(2, cache.size());
+    assertEquals(3, cache.getEvictionCount());
+  }
+
+  public void testWrap() throws PseudolocalizationException {
+    LocalizationCache cache = new LocalizationCache(10);
+    PseudolocalizationPipeline pipeline = cache.wrap(
+        PseudolocalizationPipeline.getVariantPipeline("psaccent"));
+    String expected = "[Ĥéļļö\u2003<br>\u2003ţĥéŕé one two]";
+    assertEquals(expected, runUnparsedHtml(pipeline));
+    assertEquals(expected, runUnparsedHtml(pipeline));
+    assertEquals(expected, runUnparsedHtml(pipeline.compile()));
+    // variant pipelines are already compiled, so compiling shares their entries
+    assertEquals(2, cache.getHitCount());
+    assertEquals(1, cache.getMissCount());
+    assertEquals(expected, runPreparsedHtml(pipeline));
+    assertEquals(2, cache.getHitCount());
+  }
+
+  public void testWrapOncePerPipeline() {
+    LocalizationCache cache = new LocalizationCache(10);
+    Map<String, String> options = Collections.singletonMap("expand:threshold", "2");
+    PseudolocalizationPipeline pipeline = cache.wrap(
+        PseudolocalizationPipeline.getVariantPipeline(options, "psaccent"));
+    String expected = pipeline.localize("Hello");
+    assertEquals(expected, pipeline.localize("Hello"));
+    assertEquals(1, cache.getHitCount());
+
+    // an equivalent pipeline built again does not share the entries
+    assertEquals(expected, cache.wrap(
+        PseudolocalizationPipeline.getVariantPipeline(options, "psaccent")).localize("Hello"));
+    assertEquals(1, cache.getHitCount());
+    assertEquals(2, cache.getMissCount());
+  }
+}
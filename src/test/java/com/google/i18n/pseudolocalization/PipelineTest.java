@@ -15,12 +15,29 @@
  */
 package com.google.i18n.pseudolocalization;
 
+import com.google.i18n.pseudolocalization.message.DefaultVisitor;
 import com.google.i18n.pseudolocalization.message.Message;
 import com.google.i18n.pseudolocalization.message.MessageFragmentVisitor;
+import com.google.i18n.pseudolocalization.message.Placeholder;
+import com.google.i18n.pseudolocalization.message.SimpleMessage;
+import com.google.i18n.pseudolocalization.message.TextFragment;
 import com.google.i18n.pseudolocalization.message.VisitorContext;
+import com.google.i18n.pseudolocalization.methods.Accenter;
+import com.google.i18n.pseudolocalization.methods.BracketAdder;
+import com.google.i18n.pseudolocalization.methods.CharacterSubstituter;
+import com.google.i18n.pseudolocalization.methods.Expander;
 import com.strava.i18n.pseudolocalization.format.ToStringVisitor;
 import com.strava.i18n.pseudolocalization.format.YamlMessage;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
 /**
  * Test for pseudolocalization pipeline infrastructure.
  */
@@ -45,6 +62,125 @@ public class PipelineTest extends PseudolocalizationTestCase {
     }
   }
 
+  /**
+   * A {@link PseudolocalizationMethod} which keeps the options it was created
+   * with.
+   */
+  public static class TestOptionsMethod extends DefaultVisitor
+      implements PseudolocalizationMethod {
+
+    private final Map<String, String> options;
+
+    public TestOptionsMethod() {
+      this.options = null;
+    }
+
+    public TestOptionsMethod(Map<String, String> options) {
+      this.options = options;
+    }
+  }
+
+  /**
+   * A {@link PseudolocalizationMethodProvider} listed in the test resources.
+   */
+  public static class TestProvider implements PseudolocalizationMethodProvider {
+
+    public String getMethodName() {
+      return "provided";
+    }
+
+    public PseudolocalizationMethodFactory getMethodFactory() {
+      return new PseudolocalizationMethodFactory() {
+        public PseudolocalizationMethod create(Map<String, String> options) {
+          return new BracketAdder();
+        }
+      };
+    }
+  }
+
+  /**
+   * A {@link PseudolocalizationMethodProvider} listed in the test resources,
+   * which fails to provide its method.
+   */
+  public static class TestFailingProvider implements PseudolocalizationMethodProvider {
+
+    public String getMethodName() {
+      throw new IllegalStateException("not configured");
+    }
+
+    public PseudolocalizationMethodFactory getMethodFactory() {
+      throw new IllegalStateException("not configured");
+    }
+  }
+
+  /**
+   * A {@link PseudolocalizationMethodProvider} listed in the test resources,
+   * which tries to replace a built-in method.
+   */
+  public static class TestReplacingProvider implements PseudolocalizationMethodProvider {
+
+    public String getMethodName() {
+      return "brackets";
+    }
+
+    public PseudolocalizationMethodFactory getMethodFactory() {
+      return new PseudolocalizationMethodFactory() {
+        public PseudolocalizationMethod create(Map<String, String> options) {
+          return new Accenter();
+        }
+      };
+    }
+  }
+
+  /**
+   * A {@link PseudolocalizationMethod} which records the fragments it visits.
+   */
+  private static class RecordingMethod extends DefaultVisitor
+      implements PseudolocalizationMethod {
+
+    private final List<String> visited;
+
+    RecordingMethod(List<String> visited) {
+      this.visited = visited;
+    }
+
+    @Override
+    public void visitPlaceholder(VisitorContext ctx, Placeholder placeholder) {
+      visited.add(placeholder.getTextRepresentation());
+    }
+
+    @Override
+    public void visitTextFragment(VisitorContext ctx, TextFragment fragment) {
+      visited.add(fragment.getText());
+    }
+  }
+
+  public void testMethodClass() {
+    PseudolocalizationPipeline.registerMethodClass("options", TestOptionsMethod.class);
+    TestOptionsMethod method = (TestOptionsMethod) PseudolocalizationPipeline.createMethod(null,
+        "options");
+    assertNull(method.options);
+    method = (TestOptionsMethod) PseudolocalizationPipeline.createMethod(null, "options:count=2");
+    assertEquals("2", method.options.get("options:count"));
+  }
+
+  public void testProvidedMethod() throws PseudolocalizationException {
+    assertTrue(PseudolocalizationPipeline.getRegisteredMethods().contains("provided"));
+    PseudolocalizationPipeline pipeline = PseudolocalizationPipeline.buildPipeline("provided");
+    assertEquals("[Hello]", pipeline.localize("Hello"));
+  }
+
+  public void testBadProviders() throws PseudolocalizationException {
+    // the test resources also list a provider class which does not exist
+    assertEquals("[Hello]",
+        PseudolocalizationPipeline.buildPipeline(false, "brackets").localize("Hello"));
+    PseudolocalizationPipeline.registerMethodProviders(getClass().getClassLoader());
+    assertEquals("[Hello]",
+        PseudolocalizationPipeline.buildPipeline(false, "provided").localize("Hello"));
+    assertEquals("[Hello]",
+        PseudolocalizationPipeline.buildPipeline(false, "brackets").localize("Hello"));
+  }
+
   public void testBadMethodDefaultCtor() {
     try {
       PseudolocalizationPipeline.registerMethodClass("nodefctor", TestNoDefaultCtorMethod.class);
@@ -75,6 +211,163 @@ public class PipelineTest extends PseudolocalizationTestCase {
     assertEquals("[Ĥéļļö\u2003<br>\u2003ţĥéŕé one two]", msg);
   }
 
+  public void testCompiledComposite() throws PseudolocalizationException {
+    PseudolocalizationPipeline pipeline = PseudolocalizationPipeline.buildPipeline(false,
+        "accents", "expand", "brackets").compile();
+    String msg = runPreparsedHtml(pipeline);
+    assertEquals("[Ĥéļļö\u2003<br>\u2003ţĥéŕé one two]", msg);
+  }
+
+  public void testCompiledCompositeHtml() throws PseudolocalizationException {
+    PseudolocalizationPipeline pipeline = PseudolocalizationPipeline.buildPipeline(true, "accents",
+        "expand", "brackets").compile();
+    String msg = runUnparsedHtml(pipeline);
+    assertEquals("[Ĥéļļö\u2003<br>\u2003ţĥéŕé one two]", msg);
+  }
+
+  public void testCompiledMatchesSequential() throws PseudolocalizationException {
+    String[][] methodLists = {
+        { "brackets", "accents", "brackets" },
+        { "expand", "fakebidi", "expand", "accents" },
+        { "fakebidi", "brackets", "accents", "expand" },
+        { "brackets", "brackets", "expand" },
+    };
+    String[] inputs = { "", "Hello", "Hello <b>big</b> world, <a href=\"x\">click</a>!" };
+    for (String[] methods : methodLists) {
+      for (boolean preserveHtml : new boolean[] { false, true }) {
+        PseudolocalizationPipeline pipeline = PseudolocalizationPipeline.buildPipeline(
+            preserveHtml, methods);
+        PseudolocalizationPipeline compiled = pipeline.compile();
+        for (String input : inputs) {
+          assertEquals(pipeline.localize(input), compiled.localize(input));
+        }
+      }
+    }
+  }
+
+  public void testCompiledWithoutText() throws PseudolocalizationException {
+    List<String> visited = new ArrayList<String>();
+    PseudolocalizationMethod recorder = new RecordingMethod(visited);
+    PseudolocalizationPipeline pipeline = new PseudolocalizationPipeline(
+        Arrays.<PseudolocalizationMethod>asList(recorder, new BracketAdder())).compile();
+    YamlMessage message = new YamlMessage("key", "%{count}");
+    pipeline.localize(message);
+    assertEquals("[%{count}]", message.getText());
+    assertEquals(Collections.emptyList(), visited);
+
+    message = new YamlMessage("key", "%{count} items");
+    pipeline.localize(message);
+    assertEquals("[%{count} items]", message.getText());
+    assertEquals(Arrays.asList("%{count}", " items"), visited);
+  }
+
+  public void testLocalizeAll() throws Exception {
+    String[] inputs = { "", "Hello", "one two three", "Hello <b>big</b> world" };
+    int count = PseudolocalizationPipeline.PARALLEL_BLOCK_SIZE * 2 + 3;
+    ExecutorService executor = Executors.newFixedThreadPool(2);
+    try {
+      for (String variant : new String[] { "psaccent", "psbidi" }) {
+        PseudolocalizationPipeline pipeline = PseudolocalizationPipeline.getVariantPipeline(
+            true, variant);
+        List<String> expected = new ArrayList<String>();
+        for (int i = 0; i < count; i++) {
+          expected.add(pipeline.localize(inputs[i % inputs.length]));
+        }
+        for (PseudolocalizationPipeline candidate : Arrays.asList(pipeline, pipeline.compile())) {
+          List<SimpleMessage> messages = createMessages(inputs, count);
+          candidate.localizeAll(messages);
+          assertEquals(expected, getTexts(messages));
+
+          messages = createMessages(inputs, count);
+          candidate.localizeAll(Collections.unmodifiableCollection(messages));
+          assertEquals(expected, getTexts(messages));
+
+          messages = createMessages(inputs, count);
+          candidate.localizeAll(messages, executor);
+          assertEquals(expected, getTexts(messages));
+        }
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  public void testLocalizeAllNotThreadSafe() throws InterruptedException {
+    PseudolocalizationPipeline pipeline = new PseudolocalizationPipeline(
+        Arrays.<PseudolocalizationMethod>asList(new Accenter(), new Expander()));
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      pipeline.localizeAll(createMessages(new String[] { "Hello" }, 1), executor);
+      fail("expected IllegalStateException for a pipeline with stateful methods");
+    } catch (IllegalStateException expected) {
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  public void testInstrument() throws PseudolocalizationException {
+    final List<String> applied = new ArrayList<String>();
+    PseudolocalizationListener listener = new PseudolocalizationListener() {
+      public void methodApplied(PseudolocalizationMethod method, long nanos, int fragmentsCreated,
+          int fragmentsReplaced) {
+        assertTrue(nanos >= 0);
+        applied.add(method.getClass().getSimpleName() + " " + fragmentsCreated + " "
+            + fragmentsReplaced);
+      }
+
+      public void catalogRead(int messages, long bytes, long nanos) {
+        fail("shouldn't get called");
+      }
+
+      public void catalogWritten(int messages, long bytes, long nanos) {
+        fail("shouldn't get called");
+      }
+    };
+    PseudolocalizationPipeline pipeline = PseudolocalizationPipeline.buildPipeline(true,
+        "accents", "brackets");
+    String input = "Hello <b>big</b> world";
+    String expected = pipeline.localize(input);
+    assertEquals(expected, pipeline.instrument(listener).localize(input));
+    assertEquals(Arrays.asList("HtmlPreserver 5 1", "Accenter 3 3", "BracketAdder 2 0"),
+        applied);
+
+    applied.clear();
+    assertEquals(expected, pipeline.compile().instrument(listener).localize(input));
+    assertEquals(3, applied.size());
+  }
+
+  public void testInstrumentCountsInsertedFragments() throws PseudolocalizationException {
+    final List<String> applied = new ArrayList<String>();
+    PseudolocalizationListener listener = new PseudolocalizationListener() {
+      public void methodApplied(PseudolocalizationMethod method, long nanos, int fragmentsCreated,
+          int fragmentsReplaced) {
+        applied.add(method.getClass().getSimpleName() + " " + fragmentsCreated + " "
+            + fragmentsReplaced);
+      }
+
+      public void catalogRead(int messages, long bytes, long nanos) {
+        fail("shouldn't get called");
+      }
+
+      public void catalogWritten(int messages, long bytes, long nanos) {
+        fail("shouldn't get called");
+      }
+    };
+    // PigLatin builds its fragments itself, and Expander inserts its suffix
+    PseudolocalizationPipeline.buildPipeline(false, "piglatin", "expand").instrument(listener)
+        .localize("Hello world");
+    assertEquals(Arrays.asList("PigLatin 1 1", "Expander 1 0"), applied);
+  }
+
+  public void testStatsJson() throws PseudolocalizationException {
+    PipelineStats stats = new PipelineStats();
+    PseudolocalizationPipeline.buildPipeline(false, "brackets").instrument(stats)
+        .localize("Hello");
+    assertTrue(stats.toJson(), stats.toJson().startsWith(
+        "{\"methods\":[{\"name\":\"BracketAdder\",\"invocations\":1,"));
+    assertEquals("\"a\\\"b\\\\c\\nd\\u0001\"", PipelineStats.toJsonString("a\"b\\c\nd\u0001"));
+  }
+
   public void testEmpty() throws PseudolocalizationException {
     PseudolocalizationPipeline pipeline = PseudolocalizationPipeline.buildPipeline(false);
     String msg = runPreparsedHtml(pipeline);
@@ -90,6 +383,51 @@ public class PipelineTest extends PseudolocalizationTestCase {
     assertEquals("Hello <br> there", msg);
   }
 
+  public void testThreadSafe() {
+    assertTrue(PseudolocalizationPipeline.getVariantPipeline("psaccent").isThreadSafe());
+    assertTrue(new PseudolocalizationPipeline(Arrays.<PseudolocalizationMethod>asList(
+        new Accenter(), new BracketAdder())).isThreadSafe());
+    assertFalse(new PseudolocalizationPipeline(Arrays.<PseudolocalizationMethod>asList(
+        new Accenter(), new Expander())).isThreadSafe());
+    // subclasses of a stateless base must opt in themselves
+    assertFalse(new PseudolocalizationPipeline(Arrays.<PseudolocalizationMethod>asList(
+        new CharacterSubstituter(Collections.singletonMap((int) 'a', "b")) {
+        })).isThreadSafe());
+  }
+
+  public void testConcurrentUse() throws Exception {
+    final PseudolocalizationPipeline pipeline = PseudolocalizationPipeline.getVariantPipeline(
+        "psaccent");
+    final String[] inputs = { "Hello", "Hello <b>big</b> world", "one two three four five" };
+    final String[] expected = new String[inputs.length];
+    for (int i = 0; i < inputs.length; i++) {
+      expected[i] = pipeline.localize(inputs[i]);
+    }
+    final List<Throwable> failures = Collections.synchronizedList(new ArrayList<Throwable>());
+    Thread[] threads = new Thread[4];
+    for (int t = 0; t < threads.length; t++) {
+      final int offset = t;
+      threads[t] = new Thread() {
+        @Override
+        public void run() {
+          try {
+            for (int i = 0; i < 1000; i++) {
+              int index = (i + offset) % inputs.length;
+              assertEquals(expected[index], pipeline.localize(inputs[index]));
+            }
+          } catch (Throwable e) {
+            failures.add(e);
+          }
+        }
+      };
+      threads[t].start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    assertEquals(Collections.emptyList(), failures);
+  }
+
   public void testMissingVariant() {
     PseudolocalizationPipeline pipeline = PseudolocalizationPipeline.getVariantPipeline("bogus");
     assertNull(pipeline);
@@ -108,4 +446,46 @@ public class PipelineTest extends PseudolocalizationTestCase {
     String msg = runUnparsedHtml(pipeline);
     assertEquals("\u202eHello\u202c <br> \u202ethere\u202c", msg);
   }
+
+  public void testVariantCached() throws PseudolocalizationException {
+    PseudolocalizationPipeline pipeline = PseudolocalizationPipeline.getVariantPipeline("psaccent");
+    assertSame(pipeline, PseudolocalizationPipeline.getVariantPipeline("X-PsAccent"));
+    assertNotSame(pipeline, PseudolocalizationPipeline.getVariantPipeline(false, "psaccent"));
+    Map<String, String> options = new HashMap<String, String>();
+    options.put("expand:threshold", "2");
+    PseudolocalizationPipeline expanded = PseudolocalizationPipeline.getVariantPipeline(options,
+        "psaccent");
+    assertNotSame(pipeline, expanded);
+    assertNotSame(expanded, PseudolocalizationPipeline.getVariantPipeline(options, "psaccent"));
+    assertEquals(expanded.localize("Hello"), PseudolocalizationPipeline.getVariantPipeline(
+        options, "psaccent").localize("Hello"));
+    assertSame(pipeline, PseudolocalizationPipeline.getVariantPipeline("psaccent"));
+  }
+
+  public void testVariantReregistered() throws PseudolocalizationException {
+    PseudolocalizationPipeline.registerVariant("pstest", "brackets");
+    PseudolocalizationPipeline pipeline = PseudolocalizationPipeline.getVariantPipeline("pstest");
+    assertEquals("[Hello]", pipeline.localize("Hello"));
+    assertTrue(PseudolocalizationPipeline.getRegisteredVariants().contains("pstest"));
+    PseudolocalizationPipeline.registerVariant("pstest", "accents");
+    assertEquals("\u0124\u00e9\u013c\u013c\u00f6",
+        PseudolocalizationPipeline.getVariantPipeline("pstest").localize("Hello"));
+    assertEquals("[Hello]", pipeline.localize("Hello"));
+  }
+
+  private static List<SimpleMessage> createMessages(String[] inputs, int count) {
+    List<SimpleMessage> messages = new ArrayList<SimpleMessage>();
+    for (int i = 0; i < count; i++) {
+      messages.add(new SimpleMessage(inputs[i % inputs.length]));
+    }
+    return messages;
+  }
+
+  private static List<String> getTexts(List<SimpleMessage> messages) {
+    List<String> texts = new ArrayList<String>();
+    for (SimpleMessage message : messages) {
+      texts.add(message.getText());
+    }
+    return texts;
+  }
 }
@@ -0,0 +1,149 @@
+/*
+ * Copyright 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.i18n.pseudolocalization.format;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.Lists;
+import com.google.i18n.pseudolocalization.PipelineStats;
+import com.google.i18n.pseudolocalization.PseudolocalizationPipeline;
+import com.google.i18n.pseudolocalization.message.Message;
+
+import junit.framework.TestCase;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * Test for {@link JavaProperties}.
+ */
+public class JavaPropertiesTest extends TestCase {
+
+  private static final String SOURCE = "# Greetings\n"
+      + "\n"
+      + "! second comment\n"
+      + "zebra = Hello, {0}!\n"
+      + "  apple:multi \\\n"
+      + "      line\n"
+      + "key\\ with\\ spaces\tvalue\\twith\\u00e9scapes\n"
+      + "empty\n"
+      + "odd\\\\\n";
+
+  public void testReadInSourceOrder() throws Exception {
+    List<String> ids = Lists.newArrayList();
+    List<String> texts = Lists.newArrayList();
+    ReadableMessageCatalog catalog = read(SOURCE);
+    for (Message message : catalog.readMessages()) {
+      ids.add(message.getId());
+      texts.add(((MessageFormatMessage) message).getText());
+    }
+    catalog.close();
+    assertEquals(Lists.newArrayList("zebra", "apple", "key with spaces", "empty", "odd\\"),
+        ids);
+    assertEquals(Lists.newArrayList("Hello, {0}!", "multi line", "value\twithéscapes", "",
+        ""), texts);
+  }
+
+  public void testReadComments() throws Exception {
+    MessageFormatMessage first = (MessageFormatMessage) read(SOURCE).readMessages()
+        .iterator().next();
+    assertEquals("# Greetings\n\n! second comment", first.getComment());
+  }
+
+  public void testWriteInSourceOrder() throws Exception {
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    WritableMessageCatalog writer = new JavaProperties().writeTo(output);
+    for (Message message : read(SOURCE).readMessages()) {
+      writer.writeMessage(message);
+    }
+    writer.close();
+
+    String expected = "# Greetings\n"
+        + "\n"
+        + "! second comment\n"
+        + "zebra=Hello, {0}\\!\n"
+        + "apple=multi line\n"
+        + "key\\ with\\ spaces=value\\twith\\u00E9scapes\n"
+        + "empty=\n"
+        + "odd\\\\=\n";
+    assertEquals(expected, new String(output.toByteArray(), Charsets.ISO_8859_1));
+
+    Properties expectedProperties = new Properties();
+    expectedProperties.load(new ByteArrayInputStream(SOURCE.getBytes(Charsets.ISO_8859_1)));
+    Properties actualProperties = new Properties();
+    actualProperties.load(new ByteArrayInputStream(output.toByteArray()));
+    assertEquals(expectedProperties, actualProperties);
+  }
+
+  public void testTrailingComment() throws Exception {
+    String source = "# Greetings\n"
+        + "zebra=Hello\n"
+        + "apple=Bye\n"
+        + "\n"
+        + "# the end\n";
+    List<Message> messages = Lists.newArrayList(read(source).readMessages());
+    assertEquals(2, messages.size());
+    assertEquals("apple", messages.get(1).getId());
+    assertNull(((MessageFormatMessage) messages.get(0)).getTrailingComment());
+    assertEquals("\n# the end", ((MessageFormatMessage) messages.get(1)).getTrailingComment());
+
+    PseudolocalizationPipeline.buildPipeline("brackets").localizeAll(messages);
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    WritableMessageCatalog writer = new JavaProperties().writeTo(output);
+    for (Message message : messages) {
+      writer.writeMessage(message);
+    }
+    writer.close();
+    assertEquals("# Greetings\n"
+        + "zebra=[Hello]\n"
+        + "apple=[Bye]\n"
+        + "\n"
+        + "# the end\n", new String(output.toByteArray(), Charsets.ISO_8859_1));
+  }
+
+  public void testWriteLeadingSpaceAndNonLatin() throws Exception {
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    WritableMessageCatalog writer = new JavaProperties().writeTo(output);
+    writer.writeMessage(new MessageFormatMessage("a:b", " لx\n"));
+    writer.close();
+    assertEquals("a\\:b=\\ \\u0644x\\n\n", new String(output.toByteArray(), Charsets.ISO_8859_1));
+  }
+
+  public void testInstrumented() throws Exception {
+    PipelineStats stats = new PipelineStats();
+    MessageCatalog catalog = new InstrumentedMessageCatalog(new JavaProperties(), stats);
+    ReadableMessageCatalog input = catalog.readFrom(
+        new ByteArrayInputStream(SOURCE.getBytes(Charsets.ISO_8859_1)));
+    List<Message> messages = Lists.newArrayList(input.readMessages());
+    input.close();
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    WritableMessageCatalog writer = catalog.writeTo(output);
+    for (Message message : messages) {
+      writer.writeMessage(message);
+    }
+    writer.close();
+
+    String json = stats.toJson();
+    assertTrue(json, json.contains("\"read\":{\"messages\":5,\"bytes\":" + SOURCE.length() + ","));
+    assertTrue(json, json.contains("\"write\":{\"messages\":5,\"bytes\":" + output.size() + ","));
+  }
+
+  private static ReadableMessageCatalog read(String source) {
+    return new JavaProperties().readFrom(
+        new ByteArrayInputStream(source.getBytes(Charsets.ISO_8859_1)));
+  }
+}
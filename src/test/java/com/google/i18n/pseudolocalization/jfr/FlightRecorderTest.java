@@ -0,0 +1,142 @@
+/*
+ * Copyright 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.i18n.pseudolocalization.jfr;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.Lists;
+import com.google.i18n.pseudolocalization.PseudolocalizationPipeline;
+import com.google.i18n.pseudolocalization.format.InstrumentedMessageCatalog;
+import com.google.i18n.pseudolocalization.format.JavaProperties;
+import com.google.i18n.pseudolocalization.format.MessageCatalog;
+import com.google.i18n.pseudolocalization.format.ReadableMessageCatalog;
+import com.google.i18n.pseudolocalization.format.WritableMessageCatalog;
+import com.google.i18n.pseudolocalization.message.Message;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+import junit.framework.TestCase;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Test for the Flight Recorder events of pipelines and catalogs.
+ */
+public class FlightRecorderTest extends TestCase {
+
+  private static final String SOURCE = "greeting=Hello {0}\nfarewell=Goodbye\n";
+
+  public void testCompiledEvents() throws Exception {
+    PseudolocalizationPipeline pipeline = PseudolocalizationPipeline.getVariantPipeline(
+        "psaccent").compile();
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    List<String> events = record(pipeline, output);
+    assertEquals(Lists.newArrayList(
+        "CatalogRead JavaProperties 2 " + SOURCE.length(),
+        "MessageLocalized HtmlPreserver,Accenter,Expander,BracketAdder greeting",
+        "MessageLocalized HtmlPreserver,Accenter,Expander,BracketAdder farewell",
+        "Localize HtmlPreserver,Accenter,Expander,BracketAdder 2",
+        "CatalogWrite JavaProperties 2 " + output.size()), events);
+  }
+
+  public void testMethodEvents() throws Exception {
+    PseudolocalizationPipeline pipeline = PseudolocalizationPipeline.buildPipeline(false,
+        "accents", "brackets");
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    List<String> events = record(pipeline.instrument(null), output);
+    assertEquals(Lists.newArrayList(
+        "CatalogRead JavaProperties 2 " + SOURCE.length(),
+        "MethodApplied Accenter greeting",
+        "MethodApplied Accenter farewell",
+        "MethodApplied BracketAdder greeting",
+        "MethodApplied BracketAdder farewell",
+        "Localize Accenter,BracketAdder 2",
+        "CatalogWrite JavaProperties 2 " + output.size()), events);
+  }
+
+  public void testNotInstrumented() throws Exception {
+    PseudolocalizationPipeline pipeline = PseudolocalizationPipeline.buildPipeline(false,
+        "accents", "brackets");
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    List<String> events = record(pipeline, output);
+    assertEquals(Lists.newArrayList(
+        "CatalogRead JavaProperties 2 " + SOURCE.length(),
+        "Localize Accenter,BracketAdder 2",
+        "CatalogWrite JavaProperties 2 " + output.size()), events);
+  }
+
+  /**
+   * Read, localize and write {@link #SOURCE} with all events enabled.
+   *
+   * @param pipeline
+   * @param output stream to write the catalog to
+   * @return the events recorded
+   */
+  private List<String> record(PseudolocalizationPipeline pipeline, ByteArrayOutputStream output)
+      throws Exception {
+    MessageCatalog catalog = new InstrumentedMessageCatalog(new JavaProperties());
+    Recording recording = new Recording();
+    recording.enable(CatalogReadEvent.class);
+    recording.enable(CatalogWriteEvent.class);
+    recording.enable(LocalizeEvent.class);
+    recording.enable(MessageLocalizedEvent.class);
+    recording.enable(MethodAppliedEvent.class);
+    File file = File.createTempFile("pseudolocalization", ".jfr");
+    try {
+      recording.start();
+      assertTrue(MessageLocalizedEvent.isRecorded());
+      assertTrue(MethodAppliedEvent.isRecorded());
+      ReadableMessageCatalog input = catalog.readFrom(
+          new ByteArrayInputStream(SOURCE.getBytes(Charsets.ISO_8859_1)));
+      List<Message> messages = Lists.newArrayList(input.readMessages());
+      input.close();
+      pipeline.localizeAll(messages);
+      WritableMessageCatalog writer = catalog.writeTo(output);
+      for (Message message : messages) {
+        writer.writeMessage(message);
+      }
+      writer.close();
+      recording.stop();
+      recording.dump(file.toPath());
+
+      List<String> events = new ArrayList<String>();
+      for (RecordedEvent event : RecordingFile.readAllEvents(file.toPath())) {
+        String name = event.getEventType().getName();
+        name = name.substring(name.lastIndexOf('.') + 1);
+        if (name.equals("CatalogRead") || name.equals("CatalogWrite")) {
+          events.add(name + " " + event.getString("format") + " " + event.getInt("messages")
+              + " " + event.getLong("bytes"));
+        } else if (name.equals("Localize")) {
+          events.add(name + " " + event.getString("methods") + " " + event.getInt("messages"));
+        } else if (name.equals("MessageLocalized")) {
+          events.add(name + " " + event.getString("methods") + " " + event.getString("message"));
+        } else if (name.equals("MethodApplied")) {
+          events.add(name + " " + event.getString("method") + " " + event.getString("message"));
+        }
+      }
+      return events;
+    } finally {
+      recording.close();
+      file.delete();
+      assertFalse(MethodAppliedEvent.isRecorded());
+    }
+  }
+}
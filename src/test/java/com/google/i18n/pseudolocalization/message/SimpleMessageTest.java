@@ -0,0 +1,154 @@
+/*
+ * Copyright 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.i18n.pseudolocalization.message;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Test for {@link SimpleMessage}.
+ */
+public class SimpleMessageTest extends TestCase {
+
+  private static class TestMessage extends SimpleMessage {
+
+    public TestMessage(MessageFragment... fragments) {
+      super(Arrays.asList(fragments));
+    }
+  }
+
+  public void testEdits() {
+    final MessageFragment a = new SimpleTextFragment("a");
+    final MessageFragment b = new SimpleTextFragment("b");
+    TestMessage msg = new TestMessage(a, b);
+    msg.accept(new DefaultVisitor() {
+      @Override
+      public MessageFragmentVisitor visitMessage(VisitorContext ctx, Message message) {
+        ctx.insertBefore(null, ctx.createNonlocalizableTextFragment("<"));
+        return this;
+      }
+
+      @Override
+      public void visitTextFragment(VisitorContext ctx, TextFragment fragment) {
+        ctx.insertBefore(fragment, ctx.createNonlocalizableTextFragment("("));
+        ctx.insertAfter(fragment, ctx.createNonlocalizableTextFragment(")"));
+        ctx.replaceFragment(fragment, ctx.createTextFragment(fragment.getText() + "1"),
+            ctx.createTextFragment(fragment.getText() + "2"));
+      }
+
+      @Override
+      public void endMessage(VisitorContext ctx, Message message) {
+        ctx.insertAfter(null, ctx.createNonlocalizableTextFragment(">"));
+      }
+    });
+    assertEquals("<(a1a2)(b1b2)>", msg.getText());
+  }
+
+  public void testVisitSnapshot() {
+    final MessageFragment a = new SimpleTextFragment("a");
+    final MessageFragment b = new SimpleTextFragment("b");
+    final MessageFragment c = new SimpleTextFragment("c");
+    TestMessage msg = new TestMessage(a, b, c);
+    final List<String> visited = new ArrayList<String>();
+    msg.accept(new DefaultVisitor() {
+      @Override
+      public void visitTextFragment(VisitorContext ctx, TextFragment fragment) {
+        visited.add(fragment.getText());
+        if (fragment == a) {
+          // removed fragments are still visited, added ones are not
+          ctx.replaceFragment(b, ctx.createTextFragment("x"));
+          ctx.insertAfter(c, ctx.createTextFragment("y"));
+        }
+      }
+    });
+    assertEquals(Arrays.asList("a", "b", "c"), visited);
+    assertEquals("axcy", msg.getText());
+  }
+
+  public void testMissingReference() {
+    TestMessage msg = new TestMessage(new SimpleTextFragment("a"));
+    try {
+      msg.getVisitorContext().insertAfter(new SimpleTextFragment("a"),
+          new SimpleTextFragment("b"));
+      fail("expected RuntimeException for a missing reference");
+    } catch (RuntimeException expected) {
+    }
+  }
+
+  public void testLongMessage() {
+    List<MessageFragment> fragments = new ArrayList<MessageFragment>();
+    StringBuilder expected = new StringBuilder();
+    for (int i = 0; i < 100; i++) {
+      fragments.add(new SimpleTextFragment("t" + i));
+      fragments.add(new SimpleNonlocalizableTextFragment("|"));
+      expected.append("T").append(i).append("|");
+    }
+    SimpleMessage msg = new SimpleMessage(fragments) { };
+    msg.accept(new DefaultVisitor() {
+      @Override
+      public void visitTextFragment(VisitorContext ctx, TextFragment fragment) {
+        ctx.replaceFragment(fragment, ctx.createTextFragment(fragment.getText().toUpperCase()));
+      }
+    });
+    assertEquals(expected.toString(), msg.getText());
+  }
+
+  public void testDuplicateFragments() {
+    List<MessageFragment> fragments = new ArrayList<MessageFragment>();
+    MessageFragment shared = new SimpleNonlocalizableTextFragment("|");
+    for (int i = 0; i < 20; i++) {
+      fragments.add(new SimpleTextFragment("t"));
+      fragments.add(shared);
+    }
+    SimpleMessage msg = new SimpleMessage(fragments) { };
+    msg.getVisitorContext().replaceFragment(shared, new SimpleNonlocalizableTextFragment("!"));
+    assertTrue(msg.getText().startsWith("t!t|t|"));
+  }
+
+  public void testDuplicatesRemoved() {
+    List<MessageFragment> fragments = new ArrayList<MessageFragment>();
+    MessageFragment shared = new SimpleNonlocalizableTextFragment("|");
+    MessageFragment last = new SimpleTextFragment("t");
+    for (int i = 0; i < 10; i++) {
+      fragments.add(new SimpleTextFragment("t"));
+      fragments.add(shared);
+    }
+    fragments.add(last);
+    SimpleMessage msg = new SimpleMessage(fragments) { };
+    VisitorContext ctx = msg.getVisitorContext();
+    ctx.insertAfter(last, new SimpleNonlocalizableTextFragment("."));
+    assertTrue(msg.isIndexed(last));
+    assertFalse(msg.isIndexed(shared));
+    for (int i = 0; i < 8; i++) {
+      ctx.replaceFragment(shared, new SimpleNonlocalizableTextFragment("!"));
+      assertFalse(msg.isIndexed(shared));
+    }
+    // once a single copy is left, it is indexed again
+    ctx.replaceFragment(shared, new SimpleNonlocalizableTextFragment("!"));
+    assertTrue(msg.isIndexed(shared));
+    ctx.insertAfter(shared, new SimpleNonlocalizableTextFragment("?"));
+    assertEquals("t!t!t!t!t!t!t!t!t!t|?t.", msg.getText());
+
+    ctx.insertAfter(null, shared);
+    assertFalse(msg.isIndexed(shared));
+    ctx.replaceFragment(shared, new SimpleNonlocalizableTextFragment("-"));
+    assertTrue(msg.isIndexed(shared));
+    assertEquals("t!t!t!t!t!t!t!t!t!t-?t.|", msg.getText());
+  }
+}
@@ -18,8 +18,21 @@ package com.google.i18n.pseudolocalization.methods;
 import com.google.i18n.pseudolocalization.PseudolocalizationException;
 import com.google.i18n.pseudolocalization.PseudolocalizationPipeline;
 import com.google.i18n.pseudolocalization.PseudolocalizationTestCase;
+import com.google.i18n.pseudolocalization.message.MessageFragment;
 import com.google.i18n.pseudolocalization.message.SimpleNonlocalizableTextFragment;
 import com.google.i18n.pseudolocalization.message.SimpleTextFragment;
+import com.google.i18n.pseudolocalization.message.VariantForm;
+import com.google.i18n.pseudolocalization.message.VariantFormVisitor;
+import com.google.i18n.pseudolocalization.message.VariantFragment;
+import com.google.i18n.pseudolocalization.message.VariantSelector;
+import com.google.i18n.pseudolocalization.message.VisitorContext;
+import com.google.i18n.pseudolocalization.message.impl.AbstractVariantForm;
+import com.google.i18n.pseudolocalization.message.impl.AbstractVariantFragment;
+import com.google.i18n.pseudolocalization.message.impl.AbstractVariantSelector;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 
 /**
  * Test for {@link com.google.i18n.pseudolocalization.methods.Expander}.
@@ -58,4 +71,67 @@ public class ExpanderTest extends PseudolocalizationTestCase {
         "expand");
     assertEquals("Hello <br> there one two one two", runPreparsedHtml(pipeline));
   }
+
+  public void testVariantLongestForm() throws PseudolocalizationException {
+    PseudolocalizationPipeline pipeline = PseudolocalizationPipeline.buildPipeline("expand");
+    // the longest form has the fewest words: 14 characters and 2 words in all
+    // expand by half, where the other form's 5 words or both forms' characters
+    // would expand by 14 or 23 characters
+    String msg = runPipeline(pipeline, new SimpleTextFragment("x "),
+        createVariant("abcdefghijkl", "a b c d e"));
+    assertEquals("x abcdefghijkla b c d e one two", msg);
+  }
+
+  public void testCountWords() {
+    String[] texts = { "", "a", "a b", " a", "a ", "  a  b  ", "a  b", " ", "   " };
+    for (String text : texts) {
+      assertEquals(text, text.split(" ").length, Expander.countWords(text));
+    }
+  }
+
+  /**
+   * Create a variant fragment with a single selector choosing among forms made
+   * of a single text fragment each.
+   */
+  private static VariantFragment createVariant(String... texts) {
+    final List<VariantForm> forms = new ArrayList<VariantForm>();
+    for (String text : texts) {
+      final List<MessageFragment> fragments = Collections.<MessageFragment>singletonList(
+          new SimpleTextFragment(text));
+      forms.add(new AbstractVariantForm() {
+        @Override
+        protected Iterable<MessageFragment> getFragments() {
+          return fragments;
+        }
+      });
+    }
+    final VariantSelector selector = new AbstractVariantSelector() {
+      @Override
+      public String getStartRepresentation() {
+        return "{";
+      }
+
+      @Override
+      public String getEndRepresentation() {
+        return "}";
+      }
+
+      @Override
+      protected Iterable<VariantForm> getVariantForms() {
+        return forms;
+      }
+    };
+    return new AbstractVariantFragment() {
+      @Override
+      protected Iterable<VariantSelector> getSelectors() {
+        return Collections.singletonList(selector);
+      }
+
+      public void accept(VisitorContext ctx, VariantFormVisitor visitor) {
+        for (VariantForm form : forms) {
+          form.accept(ctx, visitor);
+        }
+      }
+    };
+  }
 }
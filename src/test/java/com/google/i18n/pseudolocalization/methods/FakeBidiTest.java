@@ -60,6 +60,7 @@ public class FakeBidiTest extends PseudolocalizationTestCase {
          "\u202eChuck\u202c \u202eNorris\u202c \u202epeut\u202c "
          + "\u202ediviser\u202c \u202epar\u202c \u202ezéro\u202c.");
     runTest("Hello 123 Goodbye!", "\u202eHello\u202c 123 \u202eGoodbye\u202c!");
+    runTest("\ud835\udc00\ud835\udc01 ! \u05d0", "\u202e\ud835\udc00\ud835\udc01\u202c ! \u05d0");
   }
 
   public void testHtml() throws Exception {
@@ -65,6 +65,19 @@ public class HtmlPreserverTest extends PseudolocalizationTestCase {
     assertEquals("<img alt=\"[loc:Logo]\" src=\"foo.jpg\"/>", msg);
   }
 
+  public void testQuotedAttributes() throws PseudolocalizationException {
+    String msg = runPipeline(pipeline, "<a title='a > b' href=\"x\">go</a>");
+    assertEquals("<a title='[loc:a > b]' href=\"x\">[loc:go]</a>", msg);
+
+    msg = runPipeline(pipeline, "<INPUT VALUE=Go>");
+    assertEquals("<INPUT VALUE=[loc:Go]>", msg);
+  }
+
+  public void testComment() throws PseudolocalizationException {
+    String msg = runPipeline(pipeline, "a<!-- <b>note</b> -->b");
+    assertEquals("[loc:a]<!-- <b>note</b> -->[loc:b]", msg);
+  }
+
   public void testMissingEndTag() throws PseudolocalizationException {
     String msg = runPipeline(pipeline, "Hello <p>there!");
     assertEquals("[loc:Hello ]<p>[loc:there!]</p>", msg);
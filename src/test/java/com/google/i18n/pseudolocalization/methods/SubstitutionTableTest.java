@@ -0,0 +1,59 @@
+/*
+ * Copyright 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.i18n.pseudolocalization.methods;
+
+import junit.framework.TestCase;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Test for {@link SubstitutionTable}.
+ */
+public class SubstitutionTableTest extends TestCase {
+
+  private SubstitutionTable table;
+
+  @Override
+  protected void setUp() {
+    Map<Integer, String> replacements = new HashMap<Integer, String>();
+    replacements.put((int) 'a', "å");
+    replacements.put((int) 'b', "bb");
+    replacements.put((int) 'c', "");
+    replacements.put(0xe9, "e");
+    replacements.put(0xff21, "A");
+    replacements.put(0x1d400, "A");
+    table = SubstitutionTable.compile(replacements);
+  }
+
+  public void testBmp() {
+    assertEquals("åbbd", table.apply("abcd"));
+    assertEquals("ee", table.apply("ée"));
+    assertEquals("AB", table.apply("ＡB"));
+  }
+
+  public void testSupplementary() {
+    assertEquals("xAy", table.apply("x𝐀y"));
+    // other supplementary code points and lone surrogates are left alone
+    assertEquals("𝐁\ud835å", table.apply("𝐁\ud835a"));
+  }
+
+  public void testUnchanged() {
+    String text = "nothing to do here 𝐁";
+    assertSame(text, table.apply(text));
+    assertSame("", table.apply(""));
+  }
+}
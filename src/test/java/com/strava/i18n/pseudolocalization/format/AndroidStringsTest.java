@@ -28,7 +28,9 @@ import com.google.i18n.pseudolocalization.message.Message;
 import junit.framework.Assert;
 import junit.framework.TestCase;
 
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.io.InputStream;
 import java.net.URL;
 import java.util.List;
@@ -60,6 +62,103 @@ public class AndroidStringsTest extends TestCase {
     Assert.assertEquals(3, messages.size());
   }
 
+  public void testReadInDocumentOrder() throws Exception {
+    String xml = "<?xml version=\"1.0\" encoding=\"utf-8\"?>\n"
+        + "<resources>\n"
+        + "  <string name=\"first\">First &amp; <![CDATA[<b>]]></string>\n"
+        + "  <plurals name=\"count\">\n"
+        + "    <item quantity=\"one\">One</item>\n"
+        + "  </plurals>\n"
+        + "  <string-array name=\"list\">\n"
+        + "    <item>A</item>\n"
+        + "    <item>B</item>\n"
+        + "  </string-array>\n"
+        + "  <string name=\"empty\"/>\n"
+        + "</resources>\n";
+    ReadableMessageCatalog catalog = new AndroidStrings().readFrom(
+        new ByteArrayInputStream(xml.getBytes(Charsets.UTF_8)));
+    List<String> ids = Lists.newArrayList();
+    List<String> texts = Lists.newArrayList();
+    for (Message message : catalog.readMessages()) {
+      ids.add(message.getId());
+      ToStringVisitor visitor = new ToStringVisitor();
+      message.accept(visitor);
+      texts.add(visitor.fragmentVisitor.getStringResult());
+    }
+    catalog.close();
+    Assert.assertEquals(Lists.newArrayList(
+        AndroidMessageKey.forSimpleMessage("first").toString(),
+        AndroidMessageKey.forPlural("count", AndroidMessageKey.PluralForm.ONE).toString(),
+        AndroidMessageKey.forArrayPosition("list", 0).toString(),
+        AndroidMessageKey.forArrayPosition("list", 1).toString(),
+        AndroidMessageKey.forSimpleMessage("empty").toString()), ids);
+    Assert.assertEquals(Lists.newArrayList("First & <b>", "One", "A", "B", ""), texts);
+  }
+
+  public void testWriteInSourceOrder() throws Exception {
+    ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+    WritableMessageCatalog writableCatalog = new AndroidStrings().writeTo(outputStream);
+    writableCatalog.writeMessage(new FormattedMessage(
+        AndroidMessageKey.forSimpleMessage("zebra").toString(), "Z & <z>"));
+    writableCatalog.writeMessage(new FormattedMessage(
+        AndroidMessageKey.forArrayPosition("list", 0).toString(), "A"));
+    writableCatalog.writeMessage(new FormattedMessage(
+        AndroidMessageKey.forArrayPosition("list", 1).toString(), "B"));
+    writableCatalog.writeMessage(new FormattedMessage(
+        AndroidMessageKey.forSimpleMessage("apple").toString(), "Apple"));
+    writableCatalog.writeMessage(new FormattedMessage(
+        AndroidMessageKey.forPlural("count", AndroidMessageKey.PluralForm.OTHER).toString(),
+        "Many"));
+    writableCatalog.writeMessage(new FormattedMessage(
+        AndroidMessageKey.forPlural("count", AndroidMessageKey.PluralForm.ONE).toString(),
+        "One"));
+    writableCatalog.close();
+
+    String expected = "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"no\"?>\n"
+        + "<resources>\n"
+        + "  <string name=\"zebra\">Z &amp; &lt;z&gt;</string>\n"
+        + "  <string-array name=\"list\">\n"
+        + "    <item>A</item>\n"
+        + "    <item>B</item>\n"
+        + "  </string-array>\n"
+        + "  <string name=\"apple\">Apple</string>\n"
+        + "  <plurals name=\"count\">\n"
+        + "    <item quantity=\"other\">Many</item>\n"
+        + "    <item quantity=\"one\">One</item>\n"
+        + "  </plurals>\n"
+        + "</resources>\n";
+    Assert.assertEquals(expected, new String(outputStream.toByteArray(), Charsets.UTF_8));
+  }
+
+  public void testWriteInterleavedGroups() throws Exception {
+    WritableMessageCatalog writableCatalog = new AndroidStrings().writeTo(
+        new ByteArrayOutputStream());
+    writableCatalog.writeMessage(new FormattedMessage(
+        AndroidMessageKey.forArrayPosition("list", 0).toString(), "A"));
+    writableCatalog.writeMessage(new FormattedMessage(
+        AndroidMessageKey.forSimpleMessage("apple").toString(), "Apple"));
+    try {
+      writableCatalog.writeMessage(new FormattedMessage(
+          AndroidMessageKey.forArrayPosition("list", 1).toString(), "B"));
+      Assert.fail("expected IOException for a string-array written twice");
+    } catch (IOException expected) {
+    }
+
+    writableCatalog = new AndroidStrings().writeTo(new ByteArrayOutputStream());
+    writableCatalog.writeMessage(new FormattedMessage(
+        AndroidMessageKey.forPlural("count", AndroidMessageKey.PluralForm.ONE).toString(),
+        "One"));
+    writableCatalog.writeMessage(new FormattedMessage(
+        AndroidMessageKey.forArrayPosition("count", 0).toString(), "A"));
+    try {
+      writableCatalog.writeMessage(new FormattedMessage(
+          AndroidMessageKey.forPlural("count", AndroidMessageKey.PluralForm.OTHER).toString(),
+          "Many"));
+      Assert.fail("expected IOException for plurals written twice");
+    } catch (IOException expected) {
+    }
+  }
+
   public void testWriteToStrings() throws Exception {
     URL stringsUrl = Resources.getResource(AndroidStringsTest.class, "strings.xml");
     InputSupplier<InputStream> inputSupplier = Resources.newInputStreamSupplier(stringsUrl);
@@ -16,16 +16,23 @@
 
 package com.strava.i18n.pseudolocalization.format;
 
+import com.google.common.base.Charsets;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.io.InputSupplier;
 import com.google.common.io.Resources;
 import com.google.i18n.pseudolocalization.format.ReadableMessageCatalog;
+import com.google.i18n.pseudolocalization.format.WritableMessageCatalog;
 import com.google.i18n.pseudolocalization.message.Message;
 import junit.framework.Assert;
 import junit.framework.TestCase;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.InputStream;
 import java.net.URL;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 
 public class MacStringsTest extends TestCase {
@@ -41,7 +48,79 @@ public class MacStringsTest extends TestCase {
     Assert.assertEquals(25, messages.size());
   }
 
+  public void testReadEntries() throws Exception {
+    String strings = "/* First */\n"
+        + "\"lower_case\" = \"Say \\\"hi\\\"\";\n"
+        + "// Second\n"
+        + "\"MULTI\"\n"
+        + "  = \"one\n"
+        + "two\\U00e9\" ;\n"
+        + "UNQUOTED = \"%@\";\n"
+        + "\"SAME\";\n";
+    ReadableMessageCatalog catalog = new MacStrings().readFrom(
+        new ByteArrayInputStream(strings.getBytes(Charsets.UTF_8)));
+    List<String> ids = Lists.newArrayList();
+    List<String> texts = Lists.newArrayList();
+    List<String> comments = Lists.newArrayList();
+    for (Message message : catalog.readMessages()) {
+      ids.add(message.getId());
+      texts.add(((MacMessage) message).getText());
+      comments.add(((MacMessage) message).getComment());
+    }
+    Assert.assertEquals(Lists.newArrayList("lower_case", "MULTI", "UNQUOTED", "SAME"), ids);
+    Assert.assertEquals(Lists.newArrayList("Say \"hi\"", "one\ntwo\u00e9", "%@", "SAME"), texts);
+    Assert.assertEquals(Lists.newArrayList("/* First */", "// Second", null, null), comments);
+  }
+
   public void testWriteTo() throws Exception {
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    WritableMessageCatalog catalog = new MacStrings().writeTo(output);
+    catalog.writeMessage(new MacMessage("GREETING", "Say \"hi\"\n", "/* Greeting */"));
+    catalog.writeMessage(new MacMessage("FORMAT", "%@ \\ %d"));
+    catalog.close();
+    String expected = "/* Greeting */\n"
+        + "\"GREETING\" = \"Say \\\"hi\\\"\\n\";\n"
+        + "\"FORMAT\" = \"%@ \\\\ %d\";\n";
+    Assert.assertEquals(expected, new String(output.toByteArray(), Charsets.UTF_8));
+  }
 
+  public void testTrailingComment() throws Exception {
+    String strings = "\"A\" = \"Ay\";\n"
+        + "/* B */\n"
+        + "\"B\" = \"Bee\";\n"
+        + "/* the end */\n"
+        + "// really\n";
+    ReadableMessageCatalog input = new MacStrings().readFrom(
+        new ByteArrayInputStream(strings.getBytes(Charsets.UTF_8)));
+    List<Message> messages = Lists.newArrayList(input.readMessages());
+    Assert.assertEquals(2, messages.size());
+    Assert.assertNull(((MacMessage) messages.get(0)).getTrailingComment());
+    Assert.assertEquals("/* B */", ((MacMessage) messages.get(1)).getComment());
+    Assert.assertEquals("/* the end */\n// really",
+        ((MacMessage) messages.get(1)).getTrailingComment());
+
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    WritableMessageCatalog catalog = new MacStrings().writeTo(output);
+    for (Message message : messages) {
+      catalog.writeMessage(message);
+    }
+    catalog.close();
+    Assert.assertEquals(strings, new String(output.toByteArray(), Charsets.UTF_8));
+  }
+
+  public void testMalformedInput() throws Exception {
+    String strings = "\"A\" = \"Ay\";\n"
+        + "\"B\" = \"Bee\"\n"
+        + "\"C\" = \"Sea\";\n";
+    ReadableMessageCatalog input = new MacStrings().readFrom(
+        new ByteArrayInputStream(strings.getBytes(Charsets.UTF_8)));
+    Iterator<Message> messages = input.readMessages().iterator();
+    Assert.assertEquals("A", messages.next().getId());
+    try {
+      messages.hasNext();
+      Assert.fail("expected IllegalArgumentException for a missing semicolon");
+    } catch (IllegalArgumentException expected) {
+      Assert.assertEquals("Expected ';' at line 3", expected.getMessage());
+    }
   }
 }
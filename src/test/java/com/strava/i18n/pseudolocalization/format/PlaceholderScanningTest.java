@@ -0,0 +1,125 @@
+/**
+ * Copyright 2013 Strava Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.strava.i18n.pseudolocalization.format;
+
+import com.google.i18n.pseudolocalization.format.MessageFormatMessage;
+import com.google.i18n.pseudolocalization.message.DefaultVisitor;
+import com.google.i18n.pseudolocalization.message.Message;
+import com.google.i18n.pseudolocalization.message.Placeholder;
+import com.google.i18n.pseudolocalization.message.TextFragment;
+import com.google.i18n.pseudolocalization.message.VisitorContext;
+import junit.framework.TestCase;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Checks the placeholder scanners of each message format against the regular
+ * expressions they replaced.
+ */
+public class PlaceholderScanningTest extends TestCase {
+
+  private static final String[] SAMPLES = {
+      "",
+      "plain text",
+      "%",
+      "100%",
+      "100% sure",
+      "%%",
+      "%s and %1$s and %2$-10.3f",
+      "%05d %,d %(d %<s %tY %Tb %t",
+      "%1$ %12$ %1.x %.5f %-#+ 0,(<d",
+      "%@ %1$@ %2$5d %i%f %d%",
+      "%{name} %{} %{first_name}s %{a1} %{",
+      "{0} {1,number} {2,date,short} {#} {name} {0,} {0,x,} {0,x,y{z}",
+      "{ {{0}} {0,number,#,##0.00} {_a}",
+  };
+
+  private static final Pattern FORMATTED = Pattern.compile(
+      "%(\\d+\\$)?([-#+ 0,(\\<]*)?(\\d+)?(\\.\\d+)?([tT])?([a-zA-Z%])");
+  private static final Pattern MAC = Pattern.compile("%(\\d+\\$)?(\\d+)?([idf@%])");
+  private static final Pattern MESSAGE_FORMAT = Pattern.compile(
+      "\\{((\\d+)|#|(\\w+))(,\\w+(,[^\\}]+)?)?\\}");
+  private static final Pattern YAML = Pattern.compile("%\\{[a-zA-Z_]+\\}");
+
+  public void testFormattedMessage() {
+    for (String sample : SAMPLES) {
+      assertEquals(sample, expected(FORMATTED, sample),
+          describe(new FormattedMessage("key", sample)));
+    }
+  }
+
+  public void testMacMessage() {
+    for (String sample : SAMPLES) {
+      assertEquals(sample, expected(MAC, sample), describe(new MacMessage("key", sample)));
+    }
+  }
+
+  public void testMessageFormatMessage() {
+    for (String sample : SAMPLES) {
+      assertEquals(sample, expected(MESSAGE_FORMAT, sample),
+          describe(new MessageFormatMessage("key", sample)));
+    }
+  }
+
+  public void testYamlMessage() throws Exception {
+    for (String sample : SAMPLES) {
+      if (sample.indexOf('<') >= 0) {
+        // parsed as markup
+        continue;
+      }
+      assertEquals(sample, expected(YAML, sample), describe(new YamlMessage("key", sample)));
+    }
+  }
+
+  /**
+   * Describe the fragments found by a regular expression, placeholders being
+   * enclosed in brackets.
+   */
+  private static String expected(Pattern pattern, String text) {
+    StringBuilder buf = new StringBuilder();
+    Matcher m = pattern.matcher(text);
+    int start = 0;
+    while (m.find()) {
+      if (m.start() > start) {
+        buf.append('|').append(text, start, m.start());
+      }
+      buf.append("|[").append(m.group()).append(']');
+      start = m.end();
+    }
+    if (start < text.length()) {
+      buf.append('|').append(text.substring(start));
+    }
+    return buf.toString();
+  }
+
+  private static String describe(Message message) {
+    final StringBuilder buf = new StringBuilder();
+    message.accept(new DefaultVisitor() {
+      @Override
+      public void visitPlaceholder(VisitorContext ctx, Placeholder placeholder) {
+        buf.append("|[").append(placeholder.getTextRepresentation()).append(']');
+      }
+
+      @Override
+      public void visitTextFragment(VisitorContext ctx, TextFragment fragment) {
+        buf.append('|').append(fragment.getText());
+      }
+    });
+    return buf.toString();
+  }
+}
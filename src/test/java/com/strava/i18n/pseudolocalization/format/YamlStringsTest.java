@@ -17,6 +17,7 @@
 package com.strava.i18n.pseudolocalization.format;
 
 import com.google.common.base.Charsets;
+import com.google.common.collect.Lists;
 import com.google.common.io.InputSupplier;
 import com.google.common.io.Resources;
 import com.google.i18n.pseudolocalization.format.MessageCatalog;
@@ -24,9 +25,12 @@ import com.google.i18n.pseudolocalization.format.WritableMessageCatalog;
 import com.google.i18n.pseudolocalization.message.Message;
 import junit.framework.TestCase;
 
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.io.InputStream;
 import java.net.URL;
+import java.util.List;
 
 public class YamlStringsTest extends TestCase {
 
@@ -36,6 +40,53 @@ public class YamlStringsTest extends TestCase {
     new YamlStrings().readFrom(inputSupplier.getInput());
   }
 
+  public void testReadInDocumentOrder() throws Exception {
+    String yaml = "en:\n"
+        + "  b: \"Bee\"\n"
+        + "  count: 3\n"
+        + "  list:\n"
+        + "    - \"skipped\"\n"
+        + "  nested:\n"
+        + "    z: Zed\n"
+        + "    y: !!str 12\n"
+        + "  a: \"Ay\"\n";
+    List<String> ids = Lists.newArrayList();
+    List<String> texts = Lists.newArrayList();
+    for (Message message : new YamlStrings().readFrom(
+        new ByteArrayInputStream(yaml.getBytes(Charsets.UTF_8))).readMessages()) {
+      ids.add(message.getId());
+      ToStringVisitor visitor = new ToStringVisitor();
+      message.accept(visitor);
+      texts.add(visitor.fragmentVisitor.getStringResult());
+    }
+    assertEquals(Lists.newArrayList("en.b", "en.nested.z", "en.nested.y", "en.a"), ids);
+    assertEquals(Lists.newArrayList("Bee", "Zed", "12", "Ay"), texts);
+  }
+
+  public void testReadAliasesAndMerges() throws Exception {
+    String yaml = "en:\n"
+        + "  defaults: &d\n"
+        + "    save: \"Save\"\n"
+        + "    close: \"Close\"\n"
+        + "  title: &t \"Title\"\n"
+        + "  form:\n"
+        + "    <<: *d\n"
+        + "    cancel: \"Cancel\"\n"
+        + "    close: \"Done\"\n"
+        + "  other: *d\n"
+        + "  heading: *t\n";
+    List<String> messages = Lists.newArrayList();
+    for (Message message : new YamlStrings().readFrom(
+        new ByteArrayInputStream(yaml.getBytes(Charsets.UTF_8))).readMessages()) {
+      ToStringVisitor visitor = new ToStringVisitor();
+      message.accept(visitor);
+      messages.add(message.getId() + "=" + visitor.fragmentVisitor.getStringResult());
+    }
+    assertEquals(Lists.newArrayList("en.defaults.save=Save", "en.defaults.close=Close",
+        "en.title=Title", "en.form.cancel=Cancel", "en.form.close=Done", "en.form.save=Save",
+        "en.other.save=Save", "en.other.close=Close", "en.heading=Title"), messages);
+  }
+
   public void testWriteTo() throws Exception {
     URL stringsUrl = Resources.getResource(YamlStringsTest.class, "en-US.yml");
     InputSupplier<InputStream> inputSupplier = Resources.newInputStreamSupplier(stringsUrl);
@@ -49,4 +100,61 @@ public class YamlStringsTest extends TestCase {
 
     catalog.close();
   }
+
+  public void testWriteInSourceOrder() throws Exception {
+    String yaml = "en:\n"
+        + "  b: \"Bee\"\n"
+        + "  nested:\n"
+        + "    z: \"Zed\"\n"
+        + "    deeper:\n"
+        + "      y: \"Why\"\n"
+        + "    x: \"Ex\"\n"
+        + "  a: \"Ay\"\n";
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    WritableMessageCatalog catalog = new YamlStrings().writeTo(output);
+    for (Message message : new YamlStrings().readFrom(
+        new ByteArrayInputStream(yaml.getBytes(Charsets.UTF_8))).readMessages()) {
+      catalog.writeMessage(message);
+    }
+    catalog.close();
+
+    String expected = "\"en\":\n"
+        + "  \"b\": \"Bee\"\n"
+        + "  \"nested\":\n"
+        + "    \"z\": \"Zed\"\n"
+        + "    \"deeper\":\n"
+        + "      \"y\": \"Why\"\n"
+        + "    \"x\": \"Ex\"\n"
+        + "  \"a\": \"Ay\"\n";
+    assertEquals(expected, new String(output.toByteArray(), Charsets.UTF_8));
+  }
+
+  public void testWriteNonContiguousPrefix() throws Exception {
+    WritableMessageCatalog catalog = new YamlStrings().writeTo(new ByteArrayOutputStream());
+    catalog.writeMessage(new YamlMessage("a.x", "Ex"));
+    catalog.writeMessage(new YamlMessage("b.y", "Why"));
+    try {
+      catalog.writeMessage(new YamlMessage("a.z", "Zed"));
+      fail("expected IOException for a prefix written twice");
+    } catch (IOException expected) {
+    }
+  }
+
+  public void testWriteLeafAndPrefix() throws Exception {
+    WritableMessageCatalog catalog = new YamlStrings().writeTo(new ByteArrayOutputStream());
+    catalog.writeMessage(new YamlMessage("a.b", "Bee"));
+    try {
+      catalog.writeMessage(new YamlMessage("a.b.c", "Sea"));
+      fail("expected IOException for a key both a leaf and a prefix");
+    } catch (IOException expected) {
+    }
+
+    catalog = new YamlStrings().writeTo(new ByteArrayOutputStream());
+    catalog.writeMessage(new YamlMessage("a.b.c", "Sea"));
+    try {
+      catalog.writeMessage(new YamlMessage("a.b", "Bee"));
+      fail("expected IOException for a key both a prefix and a leaf");
+    } catch (IOException expected) {
+    }
+  }
 }
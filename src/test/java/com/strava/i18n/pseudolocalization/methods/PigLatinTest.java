@@ -28,4 +28,10 @@ public class PigLatinTest extends PseudolocalizationTestCase {
     String msg = runPipeline(pipeline, "trash");
     Assert.assertEquals(msg, "ashtray");
   }
+
+  public void testSentence() throws PseudolocalizationException {
+    PseudolocalizationPipeline pipeline = PseudolocalizationPipeline.buildPipeline("piglatin");
+    String msg = runPipeline(pipeline, "Trash the Old rhythm, 42!");
+    Assert.assertEquals("ashTray ethay Olday rhythmay, 42!", msg);
+  }
 }